@@ -0,0 +1,110 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IBlogService;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 点赞数写回：点赞只更新Redis并记录待写回的Blog，由本任务定期取出全部待写回的Blog，
+ * 以点赞集合的大小在一个事务中批量写回tb_blog.liked，热门Blog的大量点赞合并为一次更新，不再每次点赞都锁同一行。
+ * 多个节点通过分布式锁保证同一时刻只有一个节点在写回；写回的是点赞数而不是增量，
+ * 写回数据库后、删除前节点宕机时，下次重试重复写回也不会多计
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    private static final DefaultRedisScript<List> FLUSH_SCRIPT;
+    static {
+        FLUSH_SCRIPT = new DefaultRedisScript<>();
+        FLUSH_SCRIPT.setLocation(new ClassPathResource("like_flush.lua"));
+        FLUSH_SCRIPT.setResultType(List.class);
+    }
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private BlogProperties blogProperties;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "blog-like-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        long interval = blogProperties.getLikeFlushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_LIKE_FLUSH_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            // 取出待写回的Blog id
+            @SuppressWarnings("unchecked")
+            List<String> ids = stringRedisTemplate.execute(FLUSH_SCRIPT,
+                    Arrays.asList(BLOG_LIKE_DIRTY_KEY, BLOG_LIKE_FLUSHING_KEY));
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            // 通过管道批量查询点赞集合的大小，集合为空时key不存在，点赞数为0
+            List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (String id : ids) {
+                    stringConnection.zCard(BLOG_LIKED_KEY + id);
+                }
+                return null;
+            });
+            Map<Long, Integer> counts = new HashMap<>(ids.size() * 2);
+            for (int i = 0; i < ids.size(); i++) {
+                counts.put(Long.valueOf(ids.get(i)), ((Number) values.get(i)).intValue());
+            }
+            blogService.updateLiked(counts);
+            // 事务提交后删除，失败时保留，下次写回时重试；查询点赞数之后的点赞已记入新的待写回，下次写回
+            stringRedisTemplate.delete(BLOG_LIKE_FLUSHING_KEY);
+            log.debug("点赞数写回数据库，Blog数：{}", counts.size());
+        } catch (Exception e) {
+            log.error("点赞数写回数据库失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,23 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 探店笔记相关配置，对应application.yaml中的hmdp.blog
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.blog")
+public class BlogProperties {
+
+    // 点赞数写回数据库的间隔
+    private Duration likeFlushInterval = Duration.ofSeconds(5);
+    // 每条批量更新语句最多更新的Blog数
+    private int likeFlushBatchSize = 500;
+}
@@ -0,0 +1,80 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.User;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.UserMapper;
+import com.hmdp.utils.BloomFilterClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时注册并批量加载布隆过滤器
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class BloomFilterLoader implements ApplicationRunner {
+
+    // 每批查询的id个数
+    private static final int BATCH_SIZE = 1000;
+
+    @Resource
+    private BloomFilterClient bloomFilterClient;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private UserMapper userMapper;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        bloomFilterClient.register(CACHE_SHOP_KEY, "shop", BLOOM_EXPECTED_INSERTIONS, BLOOM_FPP);
+        bloomFilterClient.register(CACHE_BLOG_KEY, "blog", BLOOM_EXPECTED_INSERTIONS, BLOOM_FPP);
+        bloomFilterClient.register(CACHE_USER_KEY, "user", BLOOM_EXPECTED_INSERTIONS, BLOOM_FPP);
+
+        load(CACHE_SHOP_KEY, shopMapper, Shop::getId);
+        load(CACHE_BLOG_KEY, blogMapper, Blog::getId);
+        load(CACHE_USER_KEY, userMapper, User::getId);
+    }
+
+    /**
+     * 按id游标分批查询，只查询id列，避免一次把整张表加载到内存
+     */
+    private <T> void load(String keyPrefix, BaseMapper<T> mapper, Function<T, Long> idGetter) {
+        long lastId = 0;
+        while (true) {
+            List<T> list = mapper.selectList(new QueryWrapper<T>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + BATCH_SIZE));
+            for (T t : list) {
+                lastId = idGetter.apply(t);
+                bloomFilterClient.putLocal(keyPrefix, lastId);
+            }
+            if (list.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        // 与Redis位图合并，过滤器开始生效
+        bloomFilterClient.sync(keyPrefix);
+    }
+}
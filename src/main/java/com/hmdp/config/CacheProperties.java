@@ -0,0 +1,81 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 缓存相关配置，对应application.yaml中的hmdp.cache
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    // 缓存序列化方式：binary为紧凑二进制格式，json为原有格式
+    private String codec = "binary";
+
+    private RefreshAhead refreshAhead = new RefreshAhead();
+
+    private HotKey hotKey = new HotKey();
+
+    private WarmUp warmUp = new WarmUp();
+
+    private Invalidation invalidation = new Invalidation();
+
+    @Data
+    public static class RefreshAhead {
+        // 距逻辑过期的剩余时间不超过有效期的该比例时，热点key提前刷新
+        private double windowRatio = 0.2;
+        // 统计周期内访问次数达到该值即视为热点key
+        private int hotThreshold = 10;
+        // 访问频率统计周期
+        private Duration period = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class HotKey {
+        // 访问采样率，1表示记录每一次访问
+        private double sampleRate = 1;
+        // 统计周期内估计访问次数达到该值即视为热点key
+        private long threshold = 1000;
+        // 统计周期，每个周期计数减半
+        private Duration period = Duration.ofSeconds(1);
+        // 最多保留的热点key个数
+        private int topK = 100;
+        // 热点key在本地缓存的存活时间
+        private Duration localTtl = Duration.ofSeconds(1);
+        // 热点key在Redis中的副本个数，0表示不写副本
+        private int replicas = 0;
+        // Redis副本的有效期
+        private Duration replicaTtl = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class WarmUp {
+        // 是否在启动时预热店铺缓存
+        private boolean enabled = true;
+        // 每批查询的店铺数
+        private int batchSize = 500;
+        // 按销量排序的店铺加载到该比例后实例才就绪
+        private double readyFraction = 0.2;
+    }
+
+    @Data
+    public static class Invalidation {
+        // 每批删除的缓存key个数
+        private int batchSize = 100;
+        // 延迟双删的间隔，覆盖并发读请求用旧数据回填缓存的时间窗口
+        private Duration doubleDeleteDelay = Duration.ofMillis(500);
+        // 发件箱记录写入后多久仍未处理（如节点宕机）由补偿任务接管
+        private Duration recoveryDelay = Duration.ofSeconds(10);
+        // 补偿任务扫描发件箱的间隔
+        private Duration pollInterval = Duration.ofSeconds(5);
+        // 失败重试的最大间隔，重试间隔按次数指数增长
+        private Duration maxBackoff = Duration.ofSeconds(60);
+    }
+}
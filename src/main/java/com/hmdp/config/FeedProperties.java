@@ -0,0 +1,33 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 关注推送（Feed流）相关配置，对应application.yaml中的hmdp.feed
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.feed")
+public class FeedProperties {
+
+    // 每个节点推送任务的消费者数
+    private int fanoutConsumers = 2;
+    // 每批从数据库读取并用管道推送的粉丝数
+    private int fanoutBatchSize = 1000;
+    // 每个收件箱最多保留的Blog数，超出的最早Blog被裁剪
+    private int inboxMaxSize = 1000;
+    // 粉丝数达到该值的作者（大V）不再推送到粉丝收件箱，只写入自己的发件箱，由粉丝读取时拉取；一经标记不再取消
+    private int bigAccountThreshold = 10000;
+    // 每个大V发件箱最多保留的Blog数
+    private int outboxMaxSize = 1000;
+    // 推送消息超过该时间未确认时由其他消费者认领
+    private Duration fanoutClaimIdle = Duration.ofSeconds(60);
+    // 推送消息处理失败达到该次数后转入死信队列stream.feed.dlq，不再重试
+    private int fanoutMaxAttempts = 5;
+}
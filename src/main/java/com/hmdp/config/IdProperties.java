@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 全局唯一id相关配置，对应application.yaml中的hmdp.id
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.id")
+public class IdProperties {
+
+    // id生成方式：redis为时间戳+Redis序列号，snowflake为时间戳+worker id+本地序列号，不依赖每次访问Redis
+    private String generator = "redis";
+
+    // 号段模式每次从Redis申请的序列号个数，0表示不使用号段，每个id自增一次
+    private int segmentStep = 1000;
+    // 当前号段用到该比例时，异步申请下一个号段
+    private double prefetchRatio = 0.8;
+
+    private Snowflake snowflake = new Snowflake();
+
+    @Data
+    public static class Snowflake {
+        // worker id租约时长，节点宕机后超过该时间worker id才能被其他节点使用；
+        // Redis不可用超过该时间时本节点停止生成id，其他节点接手worker id后生成的id时间戳最多超前该时长
+        private Duration leaseTtl = Duration.ofSeconds(30);
+        // 续期间隔，须明显小于租约时长
+        private Duration heartbeat = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,19 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 节点相关配置，对应application.yaml中的hmdp.instance
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.instance")
+public class InstanceProperties {
+
+    // 节点标识，重启后须保持不变，用作消息队列的消费者名称；不配置时为 主机名:端口，主机名随重启变化的环境（如容器）须显式配置
+    private String id;
+}
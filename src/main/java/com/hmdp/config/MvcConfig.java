@@ -2,9 +2,12 @@ package com.hmdp.config;
 
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SeckillRateLimitInterceptor;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedToken;
+import com.hmdp.utils.SlidingWindowRateLimiter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -16,12 +19,21 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Autowired
-    private StringRedisTemplate stringRedisTemplate;
+    private SessionCache sessionCache;
+
+    @Autowired
+    private SignedToken signedToken;
+
+    @Autowired
+    private SlidingWindowRateLimiter slidingWindowRateLimiter;
+
+    @Autowired
+    private SeckillProperties seckillProperties;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // Token刷新拦截器;order调整执行顺序，越小越先执行
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(sessionCache, signedToken)).addPathPatterns("/**").order(0);
         // 登录拦截器
         registry.addInterceptor(new LoginInterceptor())
                 .excludePathPatterns(
@@ -32,5 +44,8 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/code",
                         "/user/login"
                 ).order(1);
+        // 秒杀限流拦截器，在登录拦截器之后执行，按用户限流
+        registry.addInterceptor(new SeckillRateLimitInterceptor(slidingWindowRateLimiter, seckillProperties))
+                .addPathPatterns("/voucher-order/seckill/**").order(2);
     }
 }
@@ -1,11 +1,16 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
 import org.redisson.Redisson;
 
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 /**
  * @author Kiro
@@ -23,4 +28,18 @@ public class RedisConfig {
         // 创建客户端
         return Redisson.create(config);
     }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        // 消息监听容器，用于订阅各节点间的广播消息（如本地缓存失效）
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    @Bean
+    public CacheCodec cacheCodec(CacheProperties cacheProperties) {
+        // 缓存序列化方式：binary为紧凑二进制格式，json为原有格式；二进制格式可以读取旧的JSON缓存
+        return "json".equalsIgnoreCase(cacheProperties.getCodec()) ? new JsonCacheCodec() : new BinaryCacheCodec();
+    }
 }
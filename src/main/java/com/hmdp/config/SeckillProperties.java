@@ -0,0 +1,64 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 秒杀相关配置，对应application.yaml中的hmdp.seckill
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    // 新增秒杀券的库存分片数，1表示不分片
+    private int stockShards = 1;
+    // 用户所在分片库存不足时，每次从其他分片借调的库存数
+    private int borrowBatch = 10;
+    // 距秒杀结束不超过该时间时，开始均衡各分片的剩余库存
+    private Duration rebalanceWindow = Duration.ofSeconds(60);
+    // 库存均衡任务的执行间隔
+    private Duration rebalanceInterval = Duration.ofSeconds(5);
+    // 库存借调的转移记录超过该时间仍未删除，视为借调中断，由补偿任务把取出的库存存入目标分片
+    private Duration transferRecoverAfter = Duration.ofSeconds(10);
+    // 本地售罄标记的有效期，过期后由下一次请求访问Redis重新确认，防止广播丢失导致补充库存后仍被拒绝
+    private Duration soldOutTtl = Duration.ofSeconds(5);
+    // 本地缓存秒杀时间和每人限购数量（含不存在的券）的时间
+    private Duration voucherInfoTtl = Duration.ofSeconds(60);
+    // 订单消息队列分区数：按用户id哈希分到stream.orders:{分区}，每个节点为每个分区启动一个消费者；各节点须配置相同的值
+    private int orderPartitions = 4;
+    // 订单消息被其他消费者领取后超过该时间仍未确认，视为该消费者已宕机，由本节点认领重新处理；
+    // 已扣减库存的订单超过该时间仍未写入数据库时，由补偿任务重新发送订单消息
+    private Duration orderClaimIdle = Duration.ofSeconds(60);
+    // 订单批量写入：每批最多的订单数
+    private int orderBatchSize = 100;
+    // 订单批量写入：收到第一条订单后最多等待该时间凑批
+    private Duration orderBatchWait = Duration.ofMillis(50);
+    // 订单处理结果在Redis中的保存时间
+    private Duration orderStatusTtl = Duration.ofMinutes(30);
+    // 长轮询订单处理结果时最多挂起的时间
+    private Duration orderStatusMaxWait = Duration.ofSeconds(30);
+
+    private RateLimit rateLimit = new RateLimit();
+
+    @Data
+    public static class RateLimit {
+        // 是否对秒杀接口限流
+        private boolean enabled = true;
+        // 本节点令牌桶每秒生成的令牌数
+        private double localRate = 2000;
+        // 本节点令牌桶容量，即允许的突发请求数
+        private double localBurst = 2000;
+        // 全局滑动窗口长度
+        private Duration window = Duration.ofSeconds(1);
+        // 每个窗口内每张券允许的请求数（所有节点合计）
+        private int voucherLimit = 5000;
+        // 每个窗口内每个用户对同一张券允许的请求数
+        private int userLimit = 2;
+    }
+}
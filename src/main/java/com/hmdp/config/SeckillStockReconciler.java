@@ -0,0 +1,93 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.utils.SeckillStock;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SECKILL_REBALANCE_KEY;
+
+/**
+ * 秒杀临近结束时均衡各分片的剩余库存，避免部分分片的用户因本分片售罄而频繁借调；
+ * 同时补偿中断的分片间库存借调，重新发送已扣减库存但未写入数据库的订单。多个节点通过分布式锁保证同一时刻只有一个节点在执行
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class SeckillStockReconciler {
+
+    @Resource
+    private SeckillVoucherMapper seckillVoucherMapper;
+
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "seckill-stock-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        long interval = seckillProperties.getRebalanceInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconcile() {
+        RLock lock = redissonClient.getLock(LOCK_SECKILL_REBALANCE_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            // 补偿中断的库存借调、重新发送未写入数据库的订单，包括一天内结束的秒杀在结束前扣减的库存
+            List<SeckillVoucher> active = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                    .select("voucher_id")
+                    .le("begin_time", now)
+                    .ge("end_time", now.minusDays(1)));
+            for (SeckillVoucher voucher : active) {
+                seckillStock.recoverTransfers(voucher.getVoucherId());
+                seckillStock.resendOrders(voucher.getVoucherId());
+            }
+            // 查询进行中且即将结束的秒杀
+            List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                    .select("voucher_id")
+                    .le("begin_time", now)
+                    .ge("end_time", now)
+                    .le("end_time", now.plus(seckillProperties.getRebalanceWindow())));
+            for (SeckillVoucher voucher : vouchers) {
+                seckillStock.rebalance(voucher.getVoucherId());
+            }
+        } catch (Exception e) {
+            log.error("秒杀库存均衡失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
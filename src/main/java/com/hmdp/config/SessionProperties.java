@@ -0,0 +1,30 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 登录会话相关配置，对应application.yaml中的hmdp.session
+ *
+ * @author Kiro
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.session")
+public class SessionProperties {
+
+    // 会话模式：redis为Redis保存会话；signed为签名token，用户信息和过期时间写在token中，校验不访问Redis
+    private String mode = "redis";
+    // 签名token的HMAC密钥，各节点一致，至少32字节；没有默认值，signed模式下未配置时启动失败，redis模式下未配置时不接受签名token
+    private String secret;
+
+    // 会话在本地缓存的时间，期间请求不访问Redis；登出会广播清除各节点的本地缓存
+    private Duration localTtl = Duration.ofSeconds(10);
+    // 本地最多缓存的会话数
+    private long localMaxSize = 100000;
+    // 距上次续期超过该时间（即剩余有效期低于 有效期 - 该时间）才再次续期，避免每个请求都EXPIRE
+    private Duration refreshAfter = Duration.ofMinutes(10);
+}
@@ -0,0 +1,119 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * 启动时预热店铺缓存：按销量从高到低分批查询tb_shop，通过管道批量写入逻辑过期缓存；
+ * 使用(sold, id)游标分页，内存中只保留一批数据。只写入不存在的key，不覆盖已有的或更新后重建的数据；
+ * 与读请求重建一样设置物理有效期，预热后不再访问的店铺会从Redis中清除。
+ * 作为健康检查加入readiness分组，热门店铺加载到配置的比例之前实例不接收流量，其余店铺在后台继续加载
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmUp implements ApplicationRunner, HealthIndicator {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheProperties cacheProperties;
+
+    private volatile long total = -1;
+    private volatile long loaded;
+    private volatile long required;
+    private volatile boolean finished;
+    private volatile Throwable error;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!cacheProperties.getWarmUp().isEnabled()) {
+            finished = true;
+            return;
+        }
+        // 在后台线程预热，不阻塞启动
+        Thread thread = new Thread(this::warmUp, "shop-cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        CacheProperties.WarmUp config = cacheProperties.getWarmUp();
+        long begin = System.currentTimeMillis();
+        try {
+            total = shopMapper.selectCount(null);
+            required = (long) Math.ceil(total * config.getReadyFraction());
+            Integer lastSold = null;
+            Long lastId = null;
+            while (true) {
+                // 游标分页：(sold, id) < (lastSold, lastId)，按销量、id降序
+                Integer sold = lastSold;
+                Long id = lastId;
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .and(sold != null, w -> w.lt("sold", sold).or(o -> o.eq("sold", sold).lt("id", id)))
+                        .orderByDesc("sold", "id")
+                        .last("limit " + config.getBatchSize()));
+                if (shops.isEmpty()) {
+                    break;
+                }
+                // 通过管道一次写入一批
+                Map<Long, Shop> batch = new LinkedHashMap<>(shops.size());
+                for (Shop shop : shops) {
+                    batch.put(shop.getId(), shop);
+                }
+                cacheClient.setBatchWithLogicalExpire(CACHE_SHOP_KEY, batch, CACHE_SHOP_TTL, TimeUnit.MINUTES, true);
+                Shop last = shops.get(shops.size() - 1);
+                lastSold = last.getSold();
+                lastId = last.getId();
+                loaded += shops.size();
+                log.info("店铺缓存预热进度：{}/{}", loaded, total);
+                if (shops.size() < config.getBatchSize()) {
+                    break;
+                }
+            }
+            log.info("店铺缓存预热完成，共{}条，耗时{}ms", loaded, System.currentTimeMillis() - begin);
+        } catch (Throwable e) {
+            // 预热失败不阻止实例接收流量，缓存由读请求按需重建
+            error = e;
+            log.error("店铺缓存预热失败，已加载{}条", loaded, e);
+        } finally {
+            finished = true;
+        }
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("loaded", loaded);
+        details.put("required", required);
+        details.put("total", total);
+        details.put("finished", finished);
+        if (error != null) {
+            details.put("error", error.toString());
+        }
+        boolean ready = finished || (total >= 0 && loaded >= required);
+        return (ready ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+}
@@ -45,6 +45,17 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 补充秒杀券库存
+     * @param id 优惠券id
+     * @param amount 补充数量
+     * @return 无
+     */
+    @PutMapping("seckill/{id}/stock")
+    public Result addSeckillStock(@PathVariable("id") Long id, @RequestParam("amount") Integer amount) {
+        return voucherService.addSeckillStock(id, amount);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
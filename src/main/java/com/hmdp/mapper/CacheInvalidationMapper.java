@@ -0,0 +1,15 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.CacheInvalidation;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ *
+ * @author Kiro
+ */
+public interface CacheInvalidationMapper extends BaseMapper<CacheInvalidation> {
+
+}
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -24,4 +26,10 @@ public interface IBlogService extends IService<Blog> {
     Result saveBlog(Blog blog);
 
     Result queryBlogOfFollow(Long max, Integer offset);
+
+    /**
+     * 在一个事务中把一批点赞数写回数据库，写入的是点赞集合的大小而不是增量，重复写回结果不变
+     * @param counts Blog id -> 点赞数
+     */
+    void updateLiked(Map<Long, Integer> counts);
 }
@@ -4,6 +4,11 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +21,13 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    void createVoucherOrder(VoucherOrder voucherOrder);
+    Result createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建同一张券的订单
+     * @return 被拒绝的订单id -> 原因；库存不足以扣减整批时返回null，由调用方逐条处理
+     */
+    Map<Long, String> createVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders);
+
+    DeferredResult<Result> queryOrderStatus(Long orderId, Integer wait);
 }
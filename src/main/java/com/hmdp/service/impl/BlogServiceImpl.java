@@ -1,35 +1,44 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.config.BlogProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilterClient;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.FeedFanout;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -45,34 +54,58 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     private IUserService userService;
 
     @Resource
-    private IFollowService followService;
+    private FeedFanout feedFanout;
+
+    // 关注推送每页的Blog数
+    private static final int FEED_PAGE_SIZE = 2;
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BloomFilterClient bloomFilterClient;
+
+    @Resource
+    private BlogProperties blogProperties;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
+        // 根据点赞数分页查询，只查询id
         Page<Blog> page = query()
+                .select("id")
                 .orderByDesc("liked")
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        List<Long> ids = page.getRecords().stream().map(Blog::getId).collect(Collectors.toList());
+        // 根据id批量查询blog
+        List<Blog> records = cacheClient.queryBatch(CACHE_BLOG_KEY, ids, Blog.class,
+                this::queryBlogMap, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        // 批量查询用户及点赞状态
+        queryBlogUserAndLiked(records);
         return Result.ok(records);
     }
 
     @Override
     public Result queryBlogById(Long id) {
-        // 查询Blog
-        Blog blog = getById(id);
-        if (blog == null) {
+        // 查询Blog，与列表接口共用缓存（逻辑过期），布隆过滤器拦截不存在的id
+        Blog cached = queryBlogCache(id);
+        if (cached == null) {
             return Result.fail("Blog不存在");
         }
+        // 缓存中的对象可能被其他请求共享，复制后再填充用户相关的字段
+        Blog blog = BeanUtil.copyProperties(cached, Blog.class);
+        // 点赞数以Redis中的计数为准
+        queryBlogLikedCount(Collections.singletonList(blog));
         // 查询Blog有关用户
         queryBlogUser(blog);
         // 查询是否点赞过
@@ -102,31 +135,110 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         blog.setIcon(user.getIcon());
     }
 
+    /**
+     * 批量查询Blog有关用户和当前用户是否点赞过，避免每篇Blog各查一次
+     * @param blogs blog列表
+     */
+    private void queryBlogUserAndLiked(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 点赞数以Redis中的计数为准
+        queryBlogLikedCount(blogs);
+        // 批量查询用户
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = userService.queryUserDTOByIds(userIds)
+                .stream()
+                .collect(Collectors.toMap(UserDTO::getId, user -> user));
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            // 用户未登录，不需要查询是否点赞，并且设置为未点赞，避免上一账号脏数据
+            blogs.forEach(blog -> blog.setIsLike(false));
+            return;
+        }
+        // 通过管道批量查询是否点赞过
+        String userId = user.getId().toString();
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                stringConnection.zScore(BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    /**
+     * 点赞数以点赞集合的大小为准，覆盖数据库（及缓存）中的点赞数，数据库中的值最多落后一个写回间隔；
+     * 点赞集合为空时key不存在，ZCARD返回0，同样覆盖
+     */
+    private void queryBlogLikedCount(List<Blog> blogs) {
+        List<Object> counts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                stringConnection.zCard(BLOG_LIKED_KEY + blog.getId());
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setLiked(((Number) counts.get(i)).intValue());
+        }
+    }
+
+    private Blog queryBlogCache(Long id) {
+        return cacheClient.queryWithRefreshAhead(CACHE_BLOG_KEY, id, Blog.class,
+                this::getById, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+    }
+
+    private Map<Long, Blog> queryBlogMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, blog -> blog));
+    }
+
     @Override
     public Result likeBlog(Long id) {
         // 获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 查询是否点赞过
-        String key = BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        // 若未点赞
-        if (score == null) {
-            // 数据库点赞数+1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            // 保存用户到Redis的set集合
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
-        } else { // 若已点赞，取消点赞，点赞数-1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            // 移除用户在Redis的set集合
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
+        // 判断Blog是否存在，走缓存和布隆过滤器
+        if (queryBlogCache(id) == null) {
+            return Result.fail("Blog不存在");
         }
+        // 执行lua脚本，点赞或取消点赞；点赞数从点赞集合读取，不再需要删除blog缓存
+        stringRedisTemplate.execute(LIKE_SCRIPT, Collections.singletonList(BLOG_LIKED_KEY + id),
+                userId.toString(), String.valueOf(System.currentTimeMillis()));
+        // 记录待写回的Blog，由后台任务批量写回数据库；待写回key与点赞集合不在同一个slot，不放入脚本。
+        // 在脚本之后记录，写回任务恰好在两步之间取走待写回的Blog时，本次变化会在下一次写回时写入
+        stringRedisTemplate.opsForSet().add(BLOG_LIKE_DIRTY_KEY, id.toString());
         return Result.ok();
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void updateLiked(Map<Long, Integer> counts) {
+        // 分批拼接为 update tb_blog set liked = case id when ? then ? ... end where id in (...)
+        int batchSize = blogProperties.getLikeFlushBatchSize();
+        Map<Long, Integer> batch = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() >= batchSize) {
+                baseMapper.updateLiked(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            baseMapper.updateLiked(batch);
+        }
+    }
+
     @Override
     public Result queryBlogLikes(Long id) {
         String key = BLOG_LIKED_KEY + id;
@@ -146,6 +258,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(userDTOS);
     }
 
+    @Override
+    public boolean save(Blog blog) {
+        boolean isSuccess = super.save(blog);
+        if (isSuccess) {
+            // 新Blog加入布隆过滤器
+            bloomFilterClient.put(CACHE_BLOG_KEY, blog.getId());
+        }
+        return isSuccess;
+    }
+
     @Override
     public Result saveBlog(Blog blog) {
         // 获取登录用户
@@ -156,16 +278,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess) {
             return Result.fail("新增Blog失败！");
         }
-        // 查询笔记作者的所有粉丝 select * from tb_follow where follow_user_id = ?
-        List<Follow> follows = followService.query().eq("follow_user_id", user.getId()).list();
-        // 推送笔记id给所有粉丝
-        for (Follow follow : follows) {
-            // 获取粉丝id
-            Long userId = follow.getUserId();
-            // 推送笔记id给粉丝
-            String key = FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
-        }
+        // 提交推送任务，由后台分批推送笔记id给所有粉丝，不阻塞请求线程
+        feedFanout.publish(blog.getId(), user.getId(), System.currentTimeMillis());
         // 返回id
         return Result.ok(blog.getId());
     }
@@ -174,12 +288,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result queryBlogOfFollow(Long max, Integer offset) {
         // 获取当前用户
         Long userId = UserHolder.getUser().getId();
-        // 查询收件箱 zrevrangebyscore key Max Min LIMIT offset count
-        String key = FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet().
-                reverseRangeByScoreWithScores(key, 0, max, offset, 2);
+        // 查询收件箱，并合并关注的大V的发件箱
+        List<ZSetOperations.TypedTuple<String>> typedTuples = queryFeed(userId, max, offset, FEED_PAGE_SIZE);
         // 非空判断
-        if (typedTuples == null || typedTuples.isEmpty()) {
+        if (typedTuples.isEmpty()) {
             return Result.ok(Collections.emptyList());
         }
 
@@ -200,15 +312,11 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             }
         }
 
-        // 根据id查blog
-        String idsStr = StrUtil.join(",", ids);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id, " + idsStr + ")").list();
-        for (Blog blog : blogs) {
-            // 查询用户
-            queryBlogUser(blog);
-            // 查询是否点赞过
-            isBlogLiked(blog);
-        }
+        // 根据id批量查blog，优先走缓存
+        List<Blog> blogs = cacheClient.queryBatch(CACHE_BLOG_KEY, ids, Blog.class,
+                this::queryBlogMap, CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        // 批量查询用户及点赞状态
+        queryBlogUserAndLiked(blogs);
 
         // 封装并返回
         ScrollResult result = new ScrollResult();
@@ -217,4 +325,72 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         result.setMinTime(minTime);
         return Result.ok(result);
     }
+
+    /**
+     * 推拉结合：收件箱中是普通作者推送的Blog，关注的大V的Blog从其发件箱拉取。
+     * 各来源都按分数不超过max倒序取前offset + count条，按时间倒序k路归并（时间相同时按来源顺序），
+     * 跳过前offset条后取count条，与只读收件箱时 zrevrangebyscore key max 0 LIMIT offset count 的游标语义一致
+     */
+    private List<ZSetOperations.TypedTuple<String>> queryFeed(Long userId, long max, int offset, int count) {
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        // 关注的大V：关注集合与大V集合的交集，排序保证每次归并的来源顺序一致
+        Set<String> bigAccounts = stringRedisTemplate.opsForSet().intersect("follows:" + userId, FEED_BIG_ACCOUNT_KEY);
+        if (bigAccounts != null) {
+            bigAccounts.stream().sorted().forEach(id -> keys.add(FEED_OUTBOX_KEY + id));
+        }
+        // 通过管道查询各来源 zrevrangebyscore key max 0 LIMIT 0 offset+count
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String key : keys) {
+                stringConnection.zRevRangeByScoreWithScores(key, 0, max, 0, offset + count);
+            }
+            return null;
+        });
+        // k路归并：堆中保存每个来源当前最新的一条
+        PriorityQueue<FeedHead> heads = new PriorityQueue<>(keys.size());
+        for (int i = 0; i < results.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) results.get(i);
+            if (tuples != null && !tuples.isEmpty()) {
+                Iterator<ZSetOperations.TypedTuple<String>> iterator = tuples.iterator();
+                heads.add(new FeedHead(i, iterator.next(), iterator));
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(count);
+        int skipped = 0;
+        while (!heads.isEmpty() && page.size() < count) {
+            FeedHead head = heads.poll();
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                page.add(head.tuple);
+            }
+            if (head.rest.hasNext()) {
+                heads.add(new FeedHead(head.source, head.rest.next(), head.rest));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 归并时某个来源的当前元素，按时间倒序、来源顺序排列
+     */
+    private static class FeedHead implements Comparable<FeedHead> {
+        private final int source;
+        private final ZSetOperations.TypedTuple<String> tuple;
+        private final Iterator<ZSetOperations.TypedTuple<String>> rest;
+
+        FeedHead(int source, ZSetOperations.TypedTuple<String> tuple, Iterator<ZSetOperations.TypedTuple<String>> rest) {
+            this.source = source;
+            this.tuple = tuple;
+            this.rest = rest;
+        }
+
+        @Override
+        public int compareTo(FeedHead other) {
+            int c = Double.compare(other.tuple.getScore(), tuple.getScore());
+            return c != 0 ? c : Integer.compare(source, other.source);
+        }
+    }
 }
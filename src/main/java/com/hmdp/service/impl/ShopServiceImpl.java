@@ -1,17 +1,14 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BloomFilterClient;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisData;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
@@ -24,12 +21,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -50,18 +44,25 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private BloomFilterClient bloomFilterClient;
+
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
     @Override
     public Result queryById(Long id) {
         // 缓存穿透
-        //Shop shop = queryWithPassThrough(id);
 //        Shop shop = cacheClient.queryWithPassThrough(
 //                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        // 互斥锁解决缓存击穿
-        //Shop shop = queryWithMutex(id);
-
+        // 互斥锁解决缓存击穿：本节点内并发请求合并为一次重建，节点间通过互斥锁和重建完成通知协调
+//        Shop shop = cacheClient.queryWithMutex(
+//                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         // 逻辑过期解决缓存击穿
-        //Shop shop = queryWithLogicalExpire(id);
-        Shop shop = cacheClient.queryWithLogicalExpire(
+//        Shop shop = cacheClient.queryWithLogicalExpire(
+//                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 提前刷新：热点店铺在逻辑过期前后台重建，冷门店铺过期后同步重建
+        Shop shop = cacheClient.queryWithRefreshAhead(
                 CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         if (shop == null) {
             return Result.fail("商铺不存在");
@@ -69,146 +70,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    // 逻辑过期缓存重建线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-
-    private Shop queryWithLogicalExpire(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否命中
-        if (StrUtil.isBlank(shopJson)) {
-            // 未命中，直接返回null
-            return null;
-        }
-        // 命中，解析数据，把JSON反序列化为对象
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 未过期，直接返回店铺信息
-            return shop;
-        }
-        // 已过期，需要缓存重建
-        // 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        // 判断是否获取锁成功
-        if (isLock) {
-            // 获取锁成功，开启独立线程，实现缓存重建
-            // 获取锁成功应该再次检测Redis缓存是否过期，做DoubleCheck；如果未过期则无需重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 重建缓存
-                    this.saveShop2Redis(id, 20L); // 测试数据较小，实际较长
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放互斥锁
-                    unlock(lockKey);
-                }
-            });
-        }
-        // 返回过期商铺信息
-        return shop;
-    }
-
-    private Shop queryWithMutex(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 命中，直接返回缓存数据
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 思路有点点小绕；isNotBlank为false时，可能为空或null；不等于null即是空即是缓存穿透
-        if (shopJson != null) {
-            // 缓存穿透，返回空值
-            return null;
-        }
-
-        // 未命中，实现缓存重建
-        // 尝试获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        Shop shop;
-        try {
-            boolean isLock = tryLock(lockKey);
-            // 判断是否获取锁成功
-            if (!isLock) {
-                // 获取锁失败，休眠并重试
-                Thread.sleep(50);
-                // 重试
-                return queryWithMutex(id);
-            }
-
-            // 成功，根据id查询数据库
-            // 注意：获取锁成功应该再次检测Redis缓存是否存在，做DoubleCheck；如果存在则无需重建缓存
-            shop = getById(id);
-
-            // 模拟重建延迟
-//            Thread.sleep(3000);
-
-            // 判断数据库是否命中
-            if (shop == null) {
-                // 未命中写入空值，防止缓存穿透
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            // 存在，写入Redis，返回数据
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放互斥锁
-            unlock(lockKey);
-        }
-
-        // 返回
-        return shop;
-    }
-
-    /**
-     * 空值缓存解决缓存穿透
-     * @param id
-     * @return
-     */
-    private Shop queryWithPassThrough(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        // 从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 判断缓存是否命中
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 命中，直接返回缓存数据
-            return JSONUtil.toBean(shopJson, Shop.class);
-        }
-        // 思路有点点小绕；isNotBlank为false时，可能为空或null；不等于null即是空即是缓存穿透
-        if (shopJson != null) {
-            // 缓存穿透，返回空值
-            return null;
-        }
-
-        // 未命中，查询数据库
-        Shop shop = getById(id);
-        // 判断数据库是否命中
-        if (shop == null) {
-            // 未命中写入空值，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+    @Override
+    @Transactional
+    public boolean save(Shop shop) {
+        boolean isSuccess = super.save(shop);
+        if (isSuccess) {
+            // 新商铺加入布隆过滤器
+            bloomFilterClient.put(CACHE_SHOP_KEY, shop.getId());
+            // 事务提交后删除缓存，清除该id之前可能缓存的空值
+            cacheInvalidator.invalidateAfterCommit(CACHE_SHOP_KEY + shop.getId());
         }
-        // 存在，写入Redis，返回数据
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        return shop;
-    }
-
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 5, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
-    }
-
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+        return isSuccess;
     }
 
     @Override
@@ -221,8 +93,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 更新数据库
         updateById(shop);
-        // 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 事务提交后删除缓存（含延迟双删），并广播各节点清除本地缓存
+        cacheInvalidator.invalidateAfterCommit(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 
@@ -269,9 +141,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             Distance distance = result.getDistance();
             distanceMap.put(shopIdStr, distance);
         });
-        // 根据id查询商铺信息
-        String idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("order by field(id, " + idStr + ")").list();
+        // 根据id批量查询商铺信息，优先走缓存
+        List<Shop> shops = cacheClient.queryBatch(CACHE_SHOP_KEY, ids, Shop.class,
+                this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         // 封装距离
         for (Shop shop : shops) {
             shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
@@ -280,17 +152,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shops);
     }
 
+    private Map<Long, Shop> queryShopMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, shop -> shop));
+    }
+
     public void saveShop2Redis(Long id, Long expireSecond) throws InterruptedException {
         // 查询店铺数据
         Shop shop = getById(id);
         // 模拟重建延迟
         Thread.sleep(200);
 
-        // 封装逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSecond));
-        // 写入Redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        // 写入Redis，按配置的序列化方式封装逻辑过期时间
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, shop, expireSecond, TimeUnit.SECONDS);
     }
 }
@@ -5,13 +5,18 @@ import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.SessionProperties;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BloomFilterClient;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedToken;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
@@ -23,10 +28,12 @@ import javax.servlet.http.HttpSession;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -45,6 +52,22 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BloomFilterClient bloomFilterClient;
+
+    @Resource
+    private SessionCache sessionCache;
+
+    @Resource
+    private SignedToken signedToken;
+
+    @Resource
+    private SessionProperties sessionProperties;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         // 校验手机号
@@ -85,11 +108,15 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 不存在，创建新用户并保存
             user = createUserWithPhone(phone);
         }
+        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        if ("signed".equals(sessionProperties.getMode())) {
+            // 签名token模式，用户信息写在token中，不保存到Redis
+            return Result.ok(signedToken.issue(userDTO));
+        }
         // 保存用户信息到Redis
         // 随机生成token，作为登录令牌
         String token = UUID.randomUUID().toString(true);
         // 将User对象转HashMap存储
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         // 由于stringRedisTemplate处理String类型，id为long类型，存Map时需要转换为String
         Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
                 CopyOptions.create()
@@ -104,6 +131,18 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        if (SignedToken.isSignedToken(token)) {
+            // 签名token无法收回，记入登出列表直到过期，并通知各节点
+            signedToken.revoke(token);
+            return Result.ok();
+        }
+        // 删除Redis中的会话，并通知各节点清除本地缓存的会话
+        sessionCache.invalidate(token);
+        return Result.ok();
+    }
+
     @Override
     public Result sign() {
         // 获取当前用户
@@ -156,6 +195,37 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(count);
     }
 
+    @Override
+    public Result queryUserById(Long id) {
+        // 与列表接口共用用户缓存，布隆过滤器拦截不存在的id
+        List<UserDTO> users = queryUserDTOByIds(Collections.singletonList(id));
+        if (users.isEmpty()) {
+            return Result.fail("用户不存在");
+        }
+        return Result.ok(users.get(0));
+    }
+
+    @Override
+    public List<UserDTO> queryUserDTOByIds(List<Long> ids) {
+        return cacheClient.queryBatch(CACHE_USER_KEY, ids, UserDTO.class,
+                this::queryUserDTOMap, CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
+
+    private Map<Long, UserDTO> queryUserDTOMap(List<Long> ids) {
+        return listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class)));
+    }
+
+    @Override
+    public boolean save(User user) {
+        boolean isSuccess = super.save(user);
+        if (isSuccess) {
+            // 新用户加入布隆过滤器
+            bloomFilterClient.put(CACHE_USER_KEY, user.getId());
+        }
+        return isSuccess;
+    }
+
     private User createUserWithPhone(String phone) {
         // 创建用户
         User user = new User();
@@ -1,30 +1,53 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.InstanceId;
+import com.hmdp.utils.SeckillOrderStatus;
+import com.hmdp.utils.SeckillStock;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.util.Collections;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -42,101 +65,363 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
 
     @Resource
-    private RedisIdWorker redisIdWorker;
+    // 按hmdp.id.generator配置选择Redis序列号或Snowflake
+    private IdGenerator idGenerator;
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private RedissonClient redissonClient;
+    private MeterRegistry meterRegistry;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    @Resource
+    private SeckillOrderStatus seckillOrderStatus;
+
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Resource
+    private InstanceId instanceId;
+
+    // 本地最多缓存的秒杀信息数
+    private static final long VOUCHER_INFO_MAX_SIZE = 10000;
 
-    private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    // 下单脚本返回值对应的提示信息
+    private static final String[] SECKILL_FAIL_MESSAGES = {"", "库存不足", "已达到限购数量", "秒杀还未开始", "秒杀已经结束"};
+
+    // 本地售罄标记：券id -> 标记过期时间，售罄后的请求直接在本节点拒绝，不再访问Redis
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    // 秒杀时间和每人限购数量：券id -> 秒杀信息，券不存在时缓存空值，避免不存在的券id每次都查询数据库；
+    // 创建券、补充库存时通过售罄广播清除各节点的缓存，其余变更在有效期后生效
+    private Cache<Long, Optional<SeckillVoucher>> voucherInfos;
+
+    // 消费者启动时就会处理pending-list，此时还没有请求线程能取到代理对象，改为注入自身的代理对象（事务）
+    @Lazy
+    @Resource
+    private IVoucherOrderService proxy;
+
+    private ExecutorService seckillOrderExecutor;
+
+    private volatile boolean running = true;
 
     @PostConstruct
     private void init() { // 初始化后执行调用
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        voucherInfos = Caffeine.newBuilder()
+                .maximumSize(VOUCHER_INFO_MAX_SIZE)
+                .expireAfterWrite(seckillProperties.getVoucherInfoTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        // 订单消息队列按用户id哈希分区，每个分区一个消费者，同一用户的订单在本节点内由同一个线程按顺序处理，不再需要分布式锁
+        int partitions = seckillProperties.getOrderPartitions();
+        AtomicInteger threadIndex = new AtomicInteger();
+        seckillOrderExecutor = Executors.newFixedThreadPool(partitions, r -> {
+            Thread thread = new Thread(r, "seckill-order-consumer-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 消费者名称为 节点标识-分区，重启后不变，多个节点共同消费同一个消费者组
+        String node = instanceId.get();
+        for (int i = 0; i < partitions; i++) {
+            String streamKey = SeckillStock.orderStreamKey(i, partitions);
+            // 创建消费者组，队列不存在时一并创建：XGROUP CREATE stream.orders:i g1 0 MKSTREAM
+            createOrderGroup(streamKey);
+            seckillOrderExecutor.submit(new VoucherOrderHandler(streamKey, node + "-" + i));
+            // 各分区积压的订单数：已确认的消息会被删除，队列长度即为未处理完的订单数
+            Gauge.builder("seckill.order.backlog", streamKey, key -> {
+                        Long size = stringRedisTemplate.opsForStream().size(key);
+                        return size == null ? 0 : size;
+                    })
+                    .tag("partition", String.valueOf(i))
+                    .description("订单消息队列分区中未处理完的订单数")
+                    .register(meterRegistry);
+        }
+        // 订阅售罄广播，消息格式：券id:1表示售罄，券id:0表示补充了库存
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            Long voucherId = Long.valueOf(parts[0]);
+            if ("1".equals(parts[1])) {
+                markSoldOut(voucherId);
+            } else {
+                soldOut.remove(voucherId);
+                voucherInfos.invalidate(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    private boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 标记过期，交由下一次请求访问Redis重新确认
+            soldOut.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    private void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, System.currentTimeMillis() + seckillProperties.getSoldOutTtl().toMillis());
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        running = false;
+        seckillOrderExecutor.shutdownNow();
+    }
+
+    private void createOrderGroup(String streamKey) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    streamKey.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            // 消费者组已存在（BUSYGROUP）
+            log.debug("订单消费者组已存在：{}", e.getMessage());
+        }
     }
 
     private class VoucherOrderHandler implements Runnable {
+
+        private final String streamKey;
+
+        private final Consumer consumer;
+
+        private long lastClaimTime;
+
+        VoucherOrderHandler(String streamKey, String name) {
+            this.streamKey = streamKey;
+            this.consumer = Consumer.from(SECKILL_ORDER_GROUP, name);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            // 启动时先处理pending-list：认领已宕机消费者未确认的消息，再处理本消费者未确认的消息
+            handlePendingList();
+            while (running) {
                 try {
-                    // 从阻塞队列中获取订单
-                    VoucherOrder voucherOrder = orderTasks.take();
-                    // 创建订单
-                    handleVoucherOrder(voucherOrder);
-                } catch (InterruptedException e) {
-                    log.error("订单保存失败", e);
+                    // 定期认领其他消费者超时未确认的消息
+                    if (System.currentTimeMillis() - lastClaimTime > seckillProperties.getOrderClaimIdle().toMillis()) {
+                        handlePendingList();
+                    }
+                    // 获取消息队列中的一批订单信息
+                    List<MapRecord<String, Object, Object>> list = readBatch();
+                    // 判断消息获取是否成功
+                    if (list.isEmpty()) {
+                        // 获取失败，说明没有消息，继续下一次循环
+                        continue;
+                    }
+                    // 获取成功，批量创建订单，数据库事务提交后再ACK确认
+                    handleRecords(list);
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常", e);
+                    // 未确认的消息留在pending-list中，处理pending-list
+                    handlePendingList();
                 }
             }
         }
-    }
 
-    private void handleVoucherOrder(VoucherOrder order) {
-        // 获取用户
-        Long userId = order.getUserId();
-        // 注意不能通过UserHolder即ThreadLocal获取，因为这是在新线程中执行的
-        // 创建锁对象
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        // 尝试获取锁
-        boolean isLock = lock.tryLock();
-        // 判断是否获取到锁
-        if (!isLock) {
-            // 获取锁失败，重复下单，返回错误信息
-            log.error("不允许重复下单");
-            return;
+        private void handlePendingList() {
+            lastClaimTime = System.currentTimeMillis();
+            claimIdleMessages();
+            while (running) {
+                try {
+                    // 获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT n STREAMS stream.orders 0
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(seckillProperties.getOrderBatchSize()),
+                            StreamOffset.create(streamKey, ReadOffset.from("0"))
+                    );
+                    // 判断消息获取是否成功
+                    if (list == null || list.isEmpty()) {
+                        // 获取失败，说明pending-list没有异常消息，结束循环
+                        break;
+                    }
+                    handleRecords(list);
+                } catch (Exception e) {
+                    log.error("处理pending-list订单异常", e);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
         }
-        try {
-            // 获取代理对象（事务）
-            proxy.createVoucherOrder(order);
-        } finally {
-            // 释放锁
-            lock.unlock();
+
+        /**
+         * 认领其他消费者超时未确认的消息，包括节点重启前的旧消费者留下的消息，认领后进入本消费者的pending-list
+         */
+        private void claimIdleMessages() {
+            try {
+                Duration minIdle = seckillProperties.getOrderClaimIdle();
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(streamKey, SECKILL_ORDER_GROUP, Range.unbounded(), 100);
+                RecordId[] ids = pending.stream()
+                        .filter(p -> !p.getConsumerName().equals(consumer.getName()))
+                        .filter(p -> p.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                        .map(PendingMessage::getId)
+                        .toArray(RecordId[]::new);
+                if (ids.length == 0) {
+                    return;
+                }
+                // XCLAIM按空闲时间再次校验，多个消费者同时认领时只有一个能成功
+                List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                        connection.streamCommands().xClaimJustId(
+                                streamKey.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, consumer.getName(),
+                                RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids)));
+                if (claimed != null && !claimed.isEmpty()) {
+                    log.info("消费者{}认领超时未确认的订单消息{}条", consumer.getName(), claimed.size());
+                }
+            } catch (Exception e) {
+                log.error("认领订单消息失败", e);
+            }
         }
+
+        /**
+         * 攒批读取：凑满orderBatchSize条或等待orderBatchWait后返回，队列空闲时最多阻塞2秒
+         */
+        private List<MapRecord<String, Object, Object>> readBatch() {
+            int batchSize = seckillProperties.getOrderBatchSize();
+            List<MapRecord<String, Object, Object>> batch = new ArrayList<>(batchSize);
+            // 第一条消息：XREADGROUP GROUP g1 c1 COUNT n BLOCK 2000 STREAMS stream.orders >
+            Duration block = Duration.ofSeconds(2);
+            long deadline = 0;
+            while (running && batch.size() < batchSize) {
+                @SuppressWarnings("unchecked")
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        consumer,
+                        StreamReadOptions.empty().count(batchSize - batch.size()).block(block),
+                        StreamOffset.create(streamKey, ReadOffset.lastConsumed())
+                );
+                if (list == null || list.isEmpty()) {
+                    break;
+                }
+                batch.addAll(list);
+                // 收到第一批后开始计时，后续只等待剩余时间
+                if (deadline == 0) {
+                    deadline = System.currentTimeMillis() + seckillProperties.getOrderBatchWait().toMillis();
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                block = Duration.ofMillis(remaining);
+            }
+            return batch;
+        }
+
+        private void handleRecords(List<MapRecord<String, Object, Object>> records) {
+            // 解析消息中的订单信息
+            List<VoucherOrder> orders = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            }
+            // 批量创建订单，事务提交后写入各订单的处理结果
+            Map<Long, String> failures = handleVoucherOrders(orders);
+            seckillOrderStatus.complete(orders, failures);
+            seckillStock.completeOrders(orders);
+            // ACK确认 XACK stream.orders g1 id1 id2 ...，已确认的消息不再需要，从队列中删除
+            RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(streamKey, SECKILL_ORDER_GROUP, ids);
+            stringRedisTemplate.opsForStream().delete(streamKey, ids);
+        }
+    }
+
+    /**
+     * 按券分组批量写入：每张券一个事务，一条扣减库存语句加一条多行插入；
+     * 批量写入失败（如库存不足以扣减整批）时，只把该券的这组订单逐条处理
+     * @return 下单失败的订单id -> 失败原因
+     */
+    private Map<Long, String> handleVoucherOrders(List<VoucherOrder> orders) {
+        Map<Long, String> failures = new HashMap<>();
+        Map<Long, List<VoucherOrder>> groups = orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : groups.entrySet()) {
+            Map<Long, String> rejected;
+            try {
+                rejected = proxy.createVoucherOrders(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.error("批量创建订单失败，券id：{}，改为逐条处理", entry.getKey(), e);
+                rejected = null;
+            }
+            if (rejected != null) {
+                failures.putAll(rejected);
+                continue;
+            }
+            // 逐条处理失败时抛出异常，整批不ACK，留在pending-list中重试；已写入的订单按订单id跳过
+            for (VoucherOrder order : entry.getValue()) {
+                Result result = handleVoucherOrder(order);
+                if (!result.getSuccess()) {
+                    failures.put(order.getId(), result.getErrorMsg());
+                }
+            }
+        }
+        return failures;
+    }
+
+    private Result handleVoucherOrder(VoucherOrder order) {
+        // 同一用户的订单只会进入同一个分区，由同一个消费者串行处理，无需再加锁
+        // 获取代理对象（事务）
+        return proxy.createVoucherOrder(order);
     }
 
-    IVoucherOrderService proxy;
-    // 结合Lua脚本实现秒杀下单
+    @Override
+    public DeferredResult<Result> queryOrderStatus(Long orderId, Integer wait) {
+        Long userId = UserHolder.getUser().getId();
+        // 订单处理中时挂起请求，最多等待配置的时间
+        long timeout = Math.min(TimeUnit.SECONDS.toMillis(wait == null ? 0 : wait),
+                seckillProperties.getOrderStatusMaxWait().toMillis());
+        return seckillOrderStatus.watch(orderId, userId, timeout);
+    }
+
+    // 结合Lua脚本和Stream消息队列实现秒杀下单
     @Override
     public Result seckillVoucher(Long voucherId) {
         // 获取用户
         Long userId = UserHolder.getUser().getId();
-        // 执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString()
-        );
+        // 本节点已知售罄，直接返回，不再访问Redis
+        if (isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        // 按本地缓存的秒杀时间提前拒绝，临界时刻仍以脚本按Redis服务器时间的校验为准
+        SeckillVoucher voucher = voucherInfo(voucherId);
+        if (voucher == null) {
+            return Result.fail("秒杀券不存在");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (voucher.getBeginTime() != null && now.isBefore(voucher.getBeginTime())) {
+            return Result.fail("秒杀还未开始");
+        }
+        if (voucher.getEndTime() != null && now.isAfter(voucher.getEndTime())) {
+            return Result.fail("秒杀已经结束");
+        }
+        // 本地校验通过后再获取订单id，避免被拒绝的请求消耗id
+        long orderId = idGenerator.nextId("order");
+        // 执行lua脚本，扣减库存并发送订单消息，分片模式下用户所在分片库存不足时从其他分片借调
+        int res = seckillStock.tryAcquire(voucherId, userId, orderId);
         // 判断结果是否为0
-        int res = result.intValue();
+        if (res == 1 && !isSoldOut(voucherId)) {
+            // 库存不足（分片模式下已向所有分片借调过），标记售罄并通知其他节点
+            markSoldOut(voucherId);
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":1");
+        }
         if (res != 0) {
             // 不为0，无购买资格
-            return Result.fail(res == 1 ? "库存不足" : "不能重复下单");
+            return Result.fail(res > 0 && res < SECKILL_FAIL_MESSAGES.length ? SECKILL_FAIL_MESSAGES[res] : "下单失败");
         }
-        // 为0，有购买资格，把下单信息保存到阻塞队列
-        // 创建订单
-        VoucherOrder order = new VoucherOrder();
-        // 订单id
-        long orderId = redisIdWorker.nextId("order");
-        order.setId(orderId);
-        // 用户id
-        order.setUserId(userId);
-        // 优惠券id
-        order.setVoucherId(voucherId);
-        // 放入阻塞队列
-        orderTasks.add(order);
-
-        // 获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
+        // 为0，有购买资格，订单消息已发送到消息队列
         // 返回订单id
         return Result.ok(orderId);
     }
@@ -195,17 +480,75 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Override
     @Transactional(rollbackFor = Exception.class)
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
-        // 一人一单
+    public Map<Long, String> createVoucherOrders(Long voucherId, List<VoucherOrder> voucherOrders) {
+        // 批量查询这些用户已有的订单
+        Set<Long> userIds = voucherOrders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        List<VoucherOrder> existing = query()
+                .select("id", "user_id")
+                .eq("voucher_id", voucherId)
+                .in("user_id", userIds)
+                .list();
+        Set<Long> existingIds = new HashSet<>();
+        Map<Long, Integer> boughtCounts = new HashMap<>();
+        for (VoucherOrder order : existing) {
+            existingIds.add(order.getId());
+            boughtCounts.merge(order.getUserId(), 1, Integer::sum);
+        }
+        // 重复投递的订单按id跳过（含同一批次内重复的消息，如补偿任务重新发送的订单与原消息），
+        // 其余按每人限购数量校验（含批次内同一用户的多个订单）
+        int limit = userLimit(voucherId);
+        Map<Long, String> rejected = new HashMap<>();
+        List<VoucherOrder> orders = new ArrayList<>(voucherOrders.size());
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            if (!existingIds.add(voucherOrder.getId())) {
+                continue;
+            }
+            int count = boughtCounts.getOrDefault(voucherOrder.getUserId(), 0);
+            if (count >= limit) {
+                log.error("用户{}已达到限购数量！", voucherOrder.getUserId());
+                rejected.put(voucherOrder.getId(), "已达到限购数量");
+                continue;
+            }
+            boughtCounts.put(voucherOrder.getUserId(), count + 1);
+            orders.add(voucherOrder);
+        }
+        if (orders.isEmpty()) {
+            return rejected;
+        }
+        // 扣减库存 set stock = stock - k where voucher_id = ? and stock >= k
+        int k = orders.size();
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock - " + k)
+                .eq("voucher_id", voucherId)
+                .ge("stock", k)
+                .update();
+        if (!success) {
+            // 库存不足以扣减整批，交由调用方逐条处理
+            return null;
+        }
+        // 批量创建订单 insert into tb_voucher_order values (...), (...)
+        getBaseMapper().insertBatch(orders);
+        return rejected;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Result createVoucherOrder(VoucherOrder voucherOrder) {
+        // 每人限购
         Long userId = voucherOrder.getUserId();
-        // 查询订单
-        int count = query().eq("user_id", userId)
-                .eq("voucher_id", voucherOrder.getVoucherId())
-                .count();
-        if (count > 0) {
-            // 已经抢购过了
-            log.error("该用户已购买过！");
-            return;
+        // 查询该用户已有的订单
+        List<Object> orderIds = listObjs(new QueryWrapper<VoucherOrder>()
+                .select("id")
+                .eq("user_id", userId)
+                .eq("voucher_id", voucherOrder.getVoucherId()));
+        if (orderIds.stream().anyMatch(id -> voucherOrder.getId().toString().equals(id.toString()))) {
+            // 订单消息重复投递，订单已创建
+            return Result.ok(voucherOrder.getId());
+        }
+        if (orderIds.size() >= userLimit(voucherOrder.getVoucherId())) {
+            // 已经达到限购数量
+            log.error("该用户已达到限购数量！");
+            return Result.fail("已达到限购数量");
         }
         // 扣减库存
         boolean success = seckillVoucherService.update()
@@ -218,9 +561,26 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         if (!success) {
             // 扣减失败，库存不足
             log.error("库存不足");
-            return;
+            return Result.fail("库存不足");
         }
         // 创建订单
         save(voucherOrder);
+        return Result.ok(voucherOrder.getId());
+    }
+
+    private int userLimit(Long voucherId) {
+        SeckillVoucher voucher = voucherInfo(voucherId);
+        return voucher == null || voucher.getUserLimit() == null ? 1 : voucher.getUserLimit();
+    }
+
+    /**
+     * 查询并缓存秒杀时间和每人限购数量
+     * @return 券不存在时返回null
+     */
+    private SeckillVoucher voucherInfo(Long voucherId) {
+        return voucherInfos.get(voucherId, id -> Optional.ofNullable(seckillVoucherService.query()
+                .select("voucher_id", "begin_time", "end_time", "user_limit")
+                .eq("voucher_id", id)
+                .one())).orElse(null);
     }
 }
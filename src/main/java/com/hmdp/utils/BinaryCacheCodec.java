@@ -0,0 +1,402 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制序列化，格式：魔数(1字节) + 逻辑过期时间(8字节) + 类型标识(1字节) + 数据。
+ * 逻辑过期时间位于固定位置，判断是否过期时无需解析数据；
+ * Shop、Blog、UserDTO、ShopType按字段顺序写入，其他类型的数据部分使用JSON；只写入表字段，
+ * 距离、作者信息、是否点赞等与请求相关的字段不缓存，由调用方每次填充；
+ * 不是以魔数开头的数据（旧的JSON缓存）交给{@link JsonCacheCodec}处理
+ *
+ * @author Kiro
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xCA;
+    private static final int HEADER_LENGTH = 10;
+    // 数据部分为JSON
+    private static final byte TYPE_JSON = 0;
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec();
+
+    private final Map<Class<?>, Schema<?>> schemasByType = new HashMap<>();
+    private final Schema<?>[] schemasByTag = new Schema<?>[128];
+
+    public BinaryCacheCodec() {
+        register(new ShopSchema());
+        register(new BlogSchema());
+        register(new UserDTOSchema());
+        register(new ShopTypeSchema());
+    }
+
+    private void register(Schema<?> schema) {
+        schemasByType.put(schema.type(), schema);
+        schemasByTag[schema.tag()] = schema;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value, long expireMillis) {
+        Writer writer = new Writer();
+        writer.writeByte(MAGIC);
+        writer.writeLongRaw(expireMillis);
+        if (value == null) {
+            // 数据为空，只有头部
+            writer.writeByte(TYPE_JSON);
+            return writer.toByteArray();
+        }
+        Schema<Object> schema = (Schema<Object>) schemasByType.get(value.getClass());
+        if (schema == null) {
+            writer.writeByte(TYPE_JSON);
+            writer.writeRaw(jsonCodec.encode(value, 0));
+        } else {
+            writer.writeByte(schema.tag());
+            schema.write(writer, value);
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.decode(bytes, type);
+        }
+        byte tag = bytes[HEADER_LENGTH - 1];
+        if (tag == TYPE_JSON) {
+            byte[] body = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+            return body.length == 0 ? null : jsonCodec.decode(body, type);
+        }
+        Schema<?> schema = tag < 0 ? null : schemasByTag[tag];
+        if (schema == null || !type.isAssignableFrom(schema.type())) {
+            throw new IllegalStateException("缓存数据类型不匹配，类型标识：" + tag + "，期望类型：" + type.getName());
+        }
+        return type.cast(schema.read(new Reader(bytes, HEADER_LENGTH)));
+    }
+
+    @Override
+    public long expireMillis(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.expireMillis(bytes);
+        }
+        return new Reader(bytes, 1).readLongRaw();
+    }
+
+    private boolean isBinary(byte[] bytes) {
+        return bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    private interface Schema<T> {
+        byte tag();
+
+        Class<T> type();
+
+        void write(Writer writer, T value);
+
+        T read(Reader reader);
+    }
+
+    private static class ShopSchema implements Schema<Shop> {
+        @Override
+        public byte tag() {
+            return 1;
+        }
+
+        @Override
+        public Class<Shop> type() {
+            return Shop.class;
+        }
+
+        @Override
+        public void write(Writer writer, Shop shop) {
+            writer.writeLong(shop.getId());
+            writer.writeString(shop.getName());
+            writer.writeLong(shop.getTypeId());
+            writer.writeString(shop.getImages());
+            writer.writeString(shop.getArea());
+            writer.writeString(shop.getAddress());
+            writer.writeDouble(shop.getX());
+            writer.writeDouble(shop.getY());
+            writer.writeLong(shop.getAvgPrice());
+            writer.writeInt(shop.getSold());
+            writer.writeInt(shop.getComments());
+            writer.writeInt(shop.getScore());
+            writer.writeString(shop.getOpenHours());
+            writer.writeDateTime(shop.getCreateTime());
+            writer.writeDateTime(shop.getUpdateTime());
+        }
+
+        @Override
+        public Shop read(Reader reader) {
+            return new Shop()
+                    .setId(reader.readLong())
+                    .setName(reader.readString())
+                    .setTypeId(reader.readLong())
+                    .setImages(reader.readString())
+                    .setArea(reader.readString())
+                    .setAddress(reader.readString())
+                    .setX(reader.readDouble())
+                    .setY(reader.readDouble())
+                    .setAvgPrice(reader.readLong())
+                    .setSold(reader.readInt())
+                    .setComments(reader.readInt())
+                    .setScore(reader.readInt())
+                    .setOpenHours(reader.readString())
+                    .setCreateTime(reader.readDateTime())
+                    .setUpdateTime(reader.readDateTime());
+        }
+    }
+
+    private static class BlogSchema implements Schema<Blog> {
+        @Override
+        public byte tag() {
+            return 2;
+        }
+
+        @Override
+        public Class<Blog> type() {
+            return Blog.class;
+        }
+
+        @Override
+        public void write(Writer writer, Blog blog) {
+            writer.writeLong(blog.getId());
+            writer.writeLong(blog.getShopId());
+            writer.writeLong(blog.getUserId());
+            writer.writeString(blog.getTitle());
+            writer.writeString(blog.getImages());
+            writer.writeString(blog.getContent());
+            writer.writeInt(blog.getLiked());
+            writer.writeInt(blog.getComments());
+            writer.writeDateTime(blog.getCreateTime());
+            writer.writeDateTime(blog.getUpdateTime());
+        }
+
+        @Override
+        public Blog read(Reader reader) {
+            return new Blog()
+                    .setId(reader.readLong())
+                    .setShopId(reader.readLong())
+                    .setUserId(reader.readLong())
+                    .setTitle(reader.readString())
+                    .setImages(reader.readString())
+                    .setContent(reader.readString())
+                    .setLiked(reader.readInt())
+                    .setComments(reader.readInt())
+                    .setCreateTime(reader.readDateTime())
+                    .setUpdateTime(reader.readDateTime());
+        }
+    }
+
+    private static class UserDTOSchema implements Schema<UserDTO> {
+        @Override
+        public byte tag() {
+            return 3;
+        }
+
+        @Override
+        public Class<UserDTO> type() {
+            return UserDTO.class;
+        }
+
+        @Override
+        public void write(Writer writer, UserDTO user) {
+            writer.writeLong(user.getId());
+            writer.writeString(user.getNickName());
+            writer.writeString(user.getIcon());
+        }
+
+        @Override
+        public UserDTO read(Reader reader) {
+            UserDTO user = new UserDTO();
+            user.setId(reader.readLong());
+            user.setNickName(reader.readString());
+            user.setIcon(reader.readString());
+            return user;
+        }
+    }
+
+    private static class ShopTypeSchema implements Schema<ShopType> {
+        @Override
+        public byte tag() {
+            return 4;
+        }
+
+        @Override
+        public Class<ShopType> type() {
+            return ShopType.class;
+        }
+
+        @Override
+        public void write(Writer writer, ShopType shopType) {
+            writer.writeLong(shopType.getId());
+            writer.writeString(shopType.getName());
+            writer.writeString(shopType.getIcon());
+            writer.writeInt(shopType.getSort());
+            writer.writeDateTime(shopType.getCreateTime());
+            writer.writeDateTime(shopType.getUpdateTime());
+        }
+
+        @Override
+        public ShopType read(Reader reader) {
+            return new ShopType()
+                    .setId(reader.readLong())
+                    .setName(reader.readString())
+                    .setIcon(reader.readString())
+                    .setSort(reader.readInt())
+                    .setCreateTime(reader.readDateTime())
+                    .setUpdateTime(reader.readDateTime());
+        }
+    }
+
+    /**
+     * 写入器，可为null的字段先写1字节的标记（0：null，1：非null）
+     */
+    private static class Writer {
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        void writeRaw(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeLongRaw(long v) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[pos++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private void writeIntRaw(int v) {
+            ensure(4);
+            for (int i = 3; i >= 0; i--) {
+                buf[pos++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        private boolean writeNull(Object v) {
+            writeByte(v == null ? (byte) 0 : (byte) 1);
+            return v == null;
+        }
+
+        void writeLong(Long v) {
+            if (!writeNull(v)) {
+                writeLongRaw(v);
+            }
+        }
+
+        void writeInt(Integer v) {
+            if (!writeNull(v)) {
+                writeIntRaw(v);
+            }
+        }
+
+        void writeDouble(Double v) {
+            if (!writeNull(v)) {
+                writeLongRaw(Double.doubleToRawLongBits(v));
+            }
+        }
+
+        void writeString(String v) {
+            if (!writeNull(v)) {
+                byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+                writeIntRaw(bytes.length);
+                writeRaw(bytes);
+            }
+        }
+
+        void writeDateTime(LocalDateTime v) {
+            if (!writeNull(v)) {
+                writeLongRaw(v.toEpochSecond(ZoneOffset.UTC));
+                writeIntRaw(v.getNano());
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        long readLongRaw() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private int readIntRaw() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private boolean readNull() {
+            return buf[pos++] == 0;
+        }
+
+        Long readLong() {
+            return readNull() ? null : readLongRaw();
+        }
+
+        Integer readInt() {
+            return readNull() ? null : readIntRaw();
+        }
+
+        Double readDouble() {
+            return readNull() ? null : Double.longBitsToDouble(readLongRaw());
+        }
+
+        String readString() {
+            if (readNull()) {
+                return null;
+            }
+            int length = readIntRaw();
+            String v = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return v;
+        }
+
+        LocalDateTime readDateTime() {
+            if (readNull()) {
+                return null;
+            }
+            long epochSecond = readLongRaw();
+            return LocalDateTime.ofEpochSecond(epochSecond, readIntRaw(), ZoneOffset.UTC);
+        }
+    }
+}
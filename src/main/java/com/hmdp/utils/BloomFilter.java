@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内布隆过滤器，位图按Redis BITMAP的位序（每个字节高位在前）与Redis互相复制
+ *
+ * @author Kiro
+ */
+public class BloomFilter {
+
+    // 位数组长度
+    private final int numBits;
+    // 哈希函数个数
+    private final int numHashes;
+    private final AtomicLongArray bits;
+    // 已置为1的位数，用于估算当前误判率
+    private final LongAdder bitCount = new LongAdder();
+    // 写入的元素个数
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        // m = -n * ln(p) / (ln2)^2，按8字节对齐
+        long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.min(Integer.MAX_VALUE / 64 * 64, Math.max(64, (m + 63) / 64 * 64));
+        // k = m / n * ln2
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray(numBits / 64);
+    }
+
+    /**
+     * 计算元素对应的位下标，双重哈希：g(i) = h1 + i * h2
+     */
+    public int[] positions(String value) {
+        long[] hash = MurmurHash.hash128(value);
+        int[] positions = new int[numHashes];
+        long combined = hash[0];
+        for (int i = 0; i < numHashes; i++) {
+            positions[i] = (int) ((combined & Long.MAX_VALUE) % numBits);
+            combined += hash[1];
+        }
+        return positions;
+    }
+
+    public boolean mightContain(String value) {
+        for (int position : positions(value)) {
+            if (!get(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 写入元素
+     * @return 元素对应的位下标，用于复制到Redis
+     */
+    public int[] put(String value) {
+        int[] positions = positions(value);
+        setBits(positions);
+        insertions.increment();
+        return positions;
+    }
+
+    public void setBits(int[] positions) {
+        for (int position : positions) {
+            set(position);
+        }
+    }
+
+    private boolean get(int position) {
+        return (bits.get(position >>> 6) & (1L << (position & 63))) != 0;
+    }
+
+    private void set(int position) {
+        int index = position >>> 6;
+        long mask = 1L << (position & 63);
+        long old;
+        do {
+            old = bits.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, old, old | mask));
+        bitCount.increment();
+    }
+
+    /**
+     * 转换为Redis BITMAP格式：第i位位于第i/8个字节的第7-i%8位
+     */
+    public byte[] toRedisBytes() {
+        byte[] bytes = new byte[numBits / 8];
+        for (int i = 0; i < bytes.length; i++) {
+            long word = bits.get(i >>> 3);
+            int b = (int) (word >>> ((i & 7) << 3)) & 0xFF;
+            // 反转字节内的位序
+            bytes[i] = (byte) (Integer.reverse(b) >>> 24);
+        }
+        return bytes;
+    }
+
+    /**
+     * 合并Redis BITMAP中的位
+     */
+    public void merge(byte[] redisBytes) {
+        int length = Math.min(redisBytes.length, numBits / 8);
+        for (int i = 0; i < length; i++) {
+            int b = redisBytes[i] & 0xFF;
+            if (b == 0) {
+                continue;
+            }
+            for (int j = 0; j < 8; j++) {
+                if ((b & (0x80 >>> j)) != 0) {
+                    set(i * 8 + j);
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据已置位比例估算当前误判率：(置位数 / 总位数) ^ k
+     */
+    public double expectedFpp() {
+        return Math.pow((double) bitCount.sum() / numBits, numHashes);
+    }
+
+    /**
+     * 位图占用的内存（字节）
+     */
+    public long memoryBytes() {
+        return numBits / 8;
+    }
+
+    public long insertions() {
+        return insertions.sum();
+    }
+
+    public int numBits() {
+        return numBits;
+    }
+}
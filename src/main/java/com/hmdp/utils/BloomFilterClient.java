@@ -0,0 +1,179 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_ADD_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_KEY;
+
+/**
+ * 布隆过滤器，防止缓存穿透：本地位图负责判断，Redis位图作为各节点共享的副本，新增元素通过广播同步到所有节点
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class BloomFilterClient {
+
+    // 当前节点标识，忽略自己发出的广播
+    private static final String NODE_ID = UUID.randomUUID().toString(true);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final MeterRegistry meterRegistry;
+
+    // 缓存key前缀 -> 过滤器
+    private final Map<String, Filter> filters = new ConcurrentHashMap<>();
+
+    public BloomFilterClient(StringRedisTemplate stringRedisTemplate,
+                             RedisMessageListenerContainer listenerContainer,
+                             MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    private void init() {
+        // 订阅其他节点新增元素的广播，消息格式：节点标识:过滤器名称:元素
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 3);
+            if (parts.length != 3 || NODE_ID.equals(parts[0])) {
+                return;
+            }
+            filters.values().stream()
+                    .filter(filter -> filter.name.equals(parts[1]))
+                    .forEach(filter -> filter.bloom.put(parts[2]));
+        }, new ChannelTopic(BLOOM_ADD_CHANNEL));
+    }
+
+    /**
+     * 注册过滤器
+     * @param keyPrefix 对应的缓存key前缀，CacheClient据此找到过滤器
+     * @param name 过滤器名称，Redis位图的key为 bloom:名称
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     */
+    public void register(String keyPrefix, String name, long expectedInsertions, double fpp) {
+        Filter filter = new Filter(name, new BloomFilter(expectedInsertions, fpp));
+        filters.put(keyPrefix, filter);
+        // 暴露误判率、内存占用等指标
+        Gauge.builder("cache.bloom.fpp", filter.bloom, BloomFilter::expectedFpp)
+                .description("布隆过滤器当前估算误判率")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("cache.bloom.memory", filter.bloom, BloomFilter::memoryBytes)
+                .description("布隆过滤器位图占用内存")
+                .baseUnit("bytes")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("cache.bloom.insertions", filter.bloom, BloomFilter::insertions)
+                .description("布隆过滤器写入元素个数")
+                .tag("name", name)
+                .register(meterRegistry);
+        filter.rejected = Counter.builder("cache.bloom.rejected")
+                .description("被布隆过滤器拦截的查询次数")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 判断元素是否可能存在；未注册过滤器或过滤器尚未加载完成时一律放行
+     */
+    public boolean mightContain(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null || !filter.ready) {
+            return true;
+        }
+        boolean contains = filter.bloom.mightContain(String.valueOf(id));
+        if (!contains) {
+            filter.rejected.increment();
+        }
+        return contains;
+    }
+
+    /**
+     * 新增元素，同步写入Redis位图并广播给其他节点
+     */
+    public void put(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        String value = String.valueOf(id);
+        int[] positions = filter.bloom.put(value);
+        // 通过管道写入Redis位图
+        byte[] key = (BLOOM_KEY + filter.name).getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int position : positions) {
+                connection.setBit(key, position, true);
+            }
+            return null;
+        });
+        // 通知其他节点
+        stringRedisTemplate.convertAndSend(BLOOM_ADD_CHANNEL, NODE_ID + ":" + filter.name + ":" + value);
+    }
+
+    /**
+     * 只写入本地位图，用于启动时批量加载，加载完成后调用{@link #sync(String)}
+     */
+    public void putLocal(String keyPrefix, Object id) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter != null) {
+            filter.bloom.put(String.valueOf(id));
+        }
+    }
+
+    /**
+     * 本地位图与Redis位图按位或合并，双方都得到完整数据，之后过滤器开始生效
+     */
+    public void sync(String keyPrefix) {
+        Filter filter = filters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        byte[] key = (BLOOM_KEY + filter.name).getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKey = (BLOOM_KEY + filter.name + ":" + NODE_ID).getBytes(StandardCharsets.UTF_8);
+        byte[] merged = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> {
+            // 本地位图写入临时key，与共享位图做BITOP OR，避免覆盖其他节点在加载期间写入的位
+            connection.set(tmpKey, filter.bloom.toRedisBytes());
+            connection.bitOp(RedisStringCommands.BitOperation.OR, key, key, tmpKey);
+            connection.del(tmpKey);
+            return connection.get(key);
+        });
+        if (merged != null) {
+            filter.bloom.merge(merged);
+        }
+        filter.ready = true;
+        log.info("布隆过滤器{}加载完成，元素个数：{}，内存：{}字节，估算误判率：{}",
+                filter.name, filter.bloom.insertions(), filter.bloom.memoryBytes(), filter.bloom.expectedFpp());
+    }
+
+    private static class Filter {
+        private final String name;
+        private final BloomFilter bloom;
+        private volatile boolean ready;
+        private Counter rejected;
+
+        private Filter(String name, BloomFilter bloom) {
+            this.name = name;
+            this.bloom = bloom;
+        }
+    }
+}
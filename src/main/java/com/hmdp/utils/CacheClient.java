@@ -1,20 +1,27 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hmdp.config.CacheProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.StringTokenizer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -29,35 +36,216 @@ public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final BloomFilterClient bloomFilterClient;
+
+    private final CacheCodec cacheCodec;
+
+    private final CacheRebuildScheduler cacheRebuildScheduler;
+
+    private final CacheProperties.RefreshAhead refreshAhead;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheProperties.HotKey hotKey;
+
+    // 进程内一级缓存（L1），Redis为二级缓存（L2）；保存反序列化后的对象，命中时无需网络往返和反序列化
+    private final Cache<String, LocalEntry> localCache = Caffeine.newBuilder()
+            .maximumWeight(CACHE_LOCAL_MAX_WEIGHT)
+            .weigher((String key, LocalEntry entry) -> entry.weight)
+            .expireAfter(new Expiry<String, LocalEntry>() {
+                @Override
+                public long expireAfterCreate(String key, LocalEntry entry, long currentTime) {
+                    return entry.remainingNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                    return entry.remainingNanos();
+                }
+
+                @Override
+                public long expireAfterRead(String key, LocalEntry entry, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    // 合并本节点对同一个key的并发重建，重建最多等待互斥锁有效期，等待的线程超过该时间后自行重建
+    private final SingleFlight singleFlight = new SingleFlight(TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL + 1));
+
+    // 提前刷新模式下各key的访问频率和逻辑过期时间
+    private final Cache<String, AccessStats> accessStats;
+
+    // 等待其他节点重建完成的key
+    private final Map<String, CompletableFuture<Void>> rebuildWaiters = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer,
+                       BloomFilterClient bloomFilterClient,
+                       CacheCodec cacheCodec,
+                       CacheRebuildScheduler cacheRebuildScheduler,
+                       CacheProperties cacheProperties,
+                       HotKeyDetector hotKeyDetector) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.bloomFilterClient = bloomFilterClient;
+        this.cacheCodec = cacheCodec;
+        this.cacheRebuildScheduler = cacheRebuildScheduler;
+        this.refreshAhead = cacheProperties.getRefreshAhead();
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKey = cacheProperties.getHotKey();
+        this.accessStats = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                // 长时间未被访问的key不再统计
+                .expireAfterAccess(refreshAhead.getPeriod().multipliedBy(2))
+                .build();
+    }
+
+    @PostConstruct
+    private void init() {
+        // 订阅失效广播，其他节点更新数据后清除本节点的一级缓存
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            localCache.invalidate(key);
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅重建完成广播，唤醒本节点等待该key的线程
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            CompletableFuture<Void> future = rebuildWaiters.remove(key);
+            if (future != null) {
+                future.complete(null);
+            }
+        }, new ChannelTopic(CACHE_REBUILT_CHANNEL));
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setBytes(key, cacheCodec.encode(value, 0), time, unit);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         // 设置逻辑过期
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        long expireMillis = System.currentTimeMillis() + unit.toMillis(time);
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setBytes(key, cacheCodec.encode(value, expireMillis), null, null);
+    }
+
+    /**
+     * 通过管道批量写入逻辑过期缓存，只需一次网络往返；与单个key的重建一致，物理有效期为逻辑有效期的2倍，不再访问的key会被清除
+     * @param keyPrefix key前缀
+     * @param values id与数据的映射
+     */
+    public void setBatchWithLogicalExpire(String keyPrefix, Map<?, ?> values, Long time, TimeUnit unit) {
+        setBatchWithLogicalExpire(keyPrefix, values, time, unit, false);
+    }
+
+    /**
+     * 通过管道批量写入逻辑过期缓存
+     * @param onlyIfAbsent 为true时只写入不存在的key，不覆盖读请求或更新后重建的较新数据，也不写入副本
+     */
+    public void setBatchWithLogicalExpire(String keyPrefix, Map<?, ?> values, Long time, TimeUnit unit,
+                                          boolean onlyIfAbsent) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long expireMillis = System.currentTimeMillis() + unit.toMillis(time);
+        Expiration expiration = Expiration.from(time * 2, unit);
+        RedisStringCommands.SetOption option = onlyIfAbsent
+                ? RedisStringCommands.SetOption.ifAbsent() : RedisStringCommands.SetOption.upsert();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((id, value) -> {
+                String key = keyPrefix + id;
+                byte[] bytes = cacheCodec.encode(value, expireMillis);
+                connection.set(toBytes(key), bytes, expiration, option);
+                if (onlyIfAbsent) {
+                    return;
+                }
+                // 热点key同时写入副本
+                for (String replicaKey : hotReplicaKeys(key)) {
+                    connection.set(toBytes(replicaKey), bytes, replicaExpiration(null, null),
+                            RedisStringCommands.SetOption.upsert());
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 通过管道批量写入空值，有效期CACHE_NULL_TTL
+     */
+    private void setNullBatch(String keyPrefix, List<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Object id : ids) {
+                connection.set(toBytes(keyPrefix + id), new byte[0], expiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 删除缓存，并广播给所有节点清除一级缓存
+     * @param key 缓存key
+     */
+    public void evict(String key) {
+        evictBatch(Collections.singletonList(key));
+    }
+
+    /**
+     * 批量删除缓存：通过管道一次删除所有key及其副本，并广播给所有节点清除一级缓存
+     * @param keys 缓存key
+     */
+    public void evictBatch(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                // 删除Redis缓存及其副本
+                List<String> replicaKeys = replicaKeys(key);
+                byte[][] rawKeys = new byte[replicaKeys.size() + 1][];
+                rawKeys[0] = toBytes(key);
+                for (int i = 0; i < replicaKeys.size(); i++) {
+                    rawKeys[i + 1] = toBytes(replicaKeys.get(i));
+                }
+                connection.del(rawKeys);
+                // 通知其他节点
+                connection.publish(toBytes(CACHE_INVALIDATE_CHANNEL), toBytes(key));
+            }
+            return null;
+        });
+        // 清除本节点一级缓存
+        localCache.invalidateAll(keys);
     }
 
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
                                            Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断不存在，直接返回，不访问Redis和数据库
+        if (!bloomFilterClient.mightContain(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
+        // 热点key先查本地缓存
+        boolean hot = hotKeyDetector.record(key);
+        R local = hot ? getLocal(key, type) : null;
+        if (local != null) {
+            return local;
+        }
         // 从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = readBytes(key, hot);
         // 判断缓存是否命中
-        if (StrUtil.isNotBlank(json)) {
-            // 命中，直接返回缓存数据
-            return JSONUtil.toBean(json, type);
+        if (bytes != null && bytes.length > 0) {
+            // 命中，直接返回缓存数据；热点key写入本地缓存
+            R r = cacheCodec.decode(bytes, type);
+            pinIfHot(key, hot, r, bytes.length);
+            return r;
         }
-        // 思路有点点小绕；isNotBlank为false时，可能为空或null；不等于null即是空即是缓存穿透
-        if (json != null) {
+        // 不为null即是空值，即是缓存穿透
+        if (bytes != null) {
             // 缓存穿透，返回空值
             return null;
         }
@@ -67,7 +255,7 @@ public class CacheClient {
         // 判断数据库是否命中
         if (r == null) {
             // 未命中写入空值，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setBytes(key, new byte[0], CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
         // 存在，写入Redis，返回数据
@@ -75,52 +263,434 @@ public class CacheClient {
         return r;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type,
                                            Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilterClient.mightContain(keyPrefix, id)) {
+            return null;
+        }
         String key = keyPrefix + id;
-        // 从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        boolean hot = hotKeyDetector.record(key);
+        // 先查一级缓存，命中即返回（一级缓存中的数据一定未逻辑过期）
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+        // 从redis查询商铺缓存，热点key读取副本
+        byte[] bytes = readBytes(key, hot);
         // 判断缓存是否命中
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             // 未命中，直接返回null
             return null;
         }
-        // 命中，解析数据，把JSON反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
+        // 命中，反序列化为对象
+        R r = cacheCodec.decode(bytes, type);
+        long expireMillis = cacheCodec.expireMillis(bytes);
         // 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 未过期，直接返回店铺信息
+        if (expireMillis > System.currentTimeMillis()) {
+            // 未过期，写入一级缓存，存活时间不超过逻辑过期时间
+            putLocal(key, r, expireMillis, bytes.length);
+            // 直接返回店铺信息
             return r;
         }
         // 已过期，需要缓存重建
-        // 获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        // 判断是否获取锁成功
-        if (isLock) {
-            // 获取锁成功，开启独立线程，实现缓存重建
-            // 获取锁成功应该再次检测Redis缓存是否过期，做DoubleCheck；如果未过期则无需重建缓存
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+        // 本节点同一个key只提交一次重建任务，其余请求直接返回旧数据，不再争抢Redis锁；队列已满时同样返回旧数据
+        cacheRebuildScheduler.submit(key, () -> {
+            // 获取互斥锁，保证多个节点间只有一个在重建
+            String lockKey = lockKey(key);
+            if (!tryLock(lockKey)) {
+                return;
+            }
+            try {
+                // 获取锁成功再次检测Redis缓存是否过期，做DoubleCheck；如果未过期则无需重建缓存
+                if (!isLogicalExpired(getBytes(key))) {
+                    return;
+                }
+                // 查询数据库
+                R r1 = dbFallback.apply(id);
+                // 写入Redis
+                this.setWithLogicalExpire(key, r1, time, unit);
+                // 通知其他节点重建完成
+                stringRedisTemplate.convertAndSend(CACHE_REBUILT_CHANNEL, key);
+            } finally {
+                // 释放互斥锁
+                unlock(lockKey);
+            }
+        });
+        // 返回过期商铺信息
+        return r;
+    }
+
+    /**
+     * 互斥锁解决缓存击穿：本节点内并发未命中的请求合并为一次重建，其余线程等待重建结果；
+     * 多个节点间通过Redis互斥锁保证只有一个节点查询数据库，未抢到锁的节点等待重建完成的广播通知
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type,
+                                    Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilterClient.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 热点key先查本地缓存
+        boolean hot = hotKeyDetector.record(key);
+        R local = hot ? getLocal(key, type) : null;
+        if (local != null) {
+            return local;
+        }
+        // 从redis查询缓存
+        byte[] bytes = readBytes(key, hot);
+        // 判断缓存是否命中
+        if (bytes != null) {
+            // 命中，空值即缓存穿透，返回null
+            if (bytes.length == 0) {
+                return null;
+            }
+            R r = cacheCodec.decode(bytes, type);
+            pinIfHot(key, hot, r, bytes.length);
+            return r;
+        }
+        // 未命中，合并本节点的并发请求，只有一个线程去重建
+        return singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, dbFallback, time, unit, false));
+    }
+
+    /**
+     * 提前刷新：按访问频率区分冷热key，热点key在逻辑过期前的刷新窗口内由后台重建，读请求始终拿到未过期的数据；
+     * 冷key不提前刷新，逻辑过期后按未命中处理，由读请求同步重建，长期不被访问则物理过期后从Redis中淘汰
+     */
+    public <R, ID> R queryWithRefreshAhead(String keyPrefix, ID id, Class<R> type,
+                                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 布隆过滤器判断不存在，直接返回
+        if (!bloomFilterClient.mightContain(keyPrefix, id)) {
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 记录访问，判断是否为热点key
+        AccessStats stats = accessStats.get(key, k -> new AccessStats());
+        boolean hot = stats.record(System.currentTimeMillis(), refreshAhead.getPeriod().toMillis())
+                >= refreshAhead.getHotThreshold();
+        // 热点key探测同样在查一级缓存之前记录，否则一级缓存挡住的访问不会被计数
+        boolean replicaHot = hotKeyDetector.record(key);
+        // 先查一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            refreshIfNeeded(key, id, stats, hot, dbFallback, time, unit);
+            return local;
+        }
+        // 从redis查询缓存，热点key读取副本
+        byte[] bytes = readBytes(key, replicaHot);
+        if (bytes != null && bytes.length == 0) {
+            // 缓存穿透，返回空值
+            return null;
+        }
+        if (!isLogicalExpired(bytes)) {
+            // 命中且未过期，写入一级缓存，记录逻辑过期时间，热点key进入刷新窗口则提前刷新
+            R r = cacheCodec.decode(bytes, type);
+            stats.expireMillis = cacheCodec.expireMillis(bytes);
+            putLocal(key, r, stats.expireMillis, bytes.length);
+            refreshIfNeeded(key, id, stats, hot, dbFallback, time, unit);
+            return r;
+        }
+        // 未命中或已过期，同步重建：本节点合并并发请求，节点间通过互斥锁协调
+        return singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, dbFallback, time, unit, true));
+    }
+
+    private <ID> void refreshIfNeeded(String key, ID id, AccessStats stats, boolean hot,
+                                      Function<ID, ?> dbFallback, Long time, TimeUnit unit) {
+        long window = (long) (unit.toMillis(time) * refreshAhead.getWindowRatio());
+        // 冷key或尚未进入刷新窗口，不做处理
+        if (!hot || stats.expireMillis == 0 || stats.expireMillis - System.currentTimeMillis() > window) {
+            return;
+        }
+        cacheRebuildScheduler.submit(key, () -> {
+            // 获取互斥锁，保证多个节点间只有一个在刷新
+            String lockKey = lockKey(key);
+            if (!tryLock(lockKey)) {
+                return;
+            }
+            try {
+                // DoubleCheck：其他节点可能已经刷新过
+                byte[] bytes = getBytes(key);
+                if (bytes != null && bytes.length > 0
+                        && cacheCodec.expireMillis(bytes) - System.currentTimeMillis() > window) {
+                    stats.expireMillis = cacheCodec.expireMillis(bytes);
+                    return;
+                }
+                loadAndSet(key, id, dbFallback, time, unit, true);
+                stats.expireMillis = System.currentTimeMillis() + unit.toMillis(time);
+                // 清除一级缓存中的旧数据，下次读取新数据
+                localCache.invalidate(key);
+            } finally {
+                // 释放互斥锁
+                unlock(lockKey);
+            }
+        });
+    }
+
+    /**
+     * 重建互斥锁的key，由缓存key得出，不同业务前缀下相同id的重建互不影响
+     */
+    private static String lockKey(String key) {
+        return "lock:" + key;
+    }
+
+    /**
+     * @param logical true：按逻辑过期写入，已逻辑过期的数据视为未命中；false：按有效期写入
+     */
+    private <R, ID> R rebuildWithMutex(String key, ID id, Class<R> type,
+                                       Function<ID, R> dbFallback, Long time, TimeUnit unit, boolean logical) {
+        String lockKey = lockKey(key);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        while (System.currentTimeMillis() < deadline) {
+            if (tryLock(lockKey)) {
                 try {
-                    // 查询数据库
-                    R r1 = dbFallback.apply(id);
-                    // 写入Redis
-                    this.setWithLogicalExpire(key, r1, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    // 获取锁成功再次检测缓存是否存在，做DoubleCheck
+                    byte[] bytes = getBytes(key);
+                    if (isUsable(bytes, logical)) {
+                        return bytes.length == 0 ? null : cacheCodec.decode(bytes, type);
+                    }
+                    return loadAndSet(key, id, dbFallback, time, unit, logical);
                 } finally {
                     // 释放互斥锁
                     unlock(lockKey);
                 }
-            });
+            }
+            // 其他节点正在重建，等待重建完成的通知（超时后重新检查，防止通知丢失）
+            awaitRebuilt(key, LOCK_WAIT_MILLIS);
+            byte[] bytes = getBytes(key);
+            if (isUsable(bytes, logical)) {
+                return bytes.length == 0 ? null : cacheCodec.decode(bytes, type);
+            }
         }
-        // 返回过期商铺信息
+        // 等待超时，持锁节点可能已宕机，直接查询数据库
+        return loadAndSet(key, id, dbFallback, time, unit, logical);
+    }
+
+    private <R, ID> R loadAndSet(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+                                 boolean logical) {
+        // 查询数据库
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            // 未命中写入空值，防止缓存穿透
+            setBytes(key, new byte[0], CACHE_NULL_TTL, TimeUnit.MINUTES);
+        } else if (logical) {
+            // 逻辑过期之外再保留一个有效期作为物理过期时间，冷key不再被访问即从Redis中淘汰
+            long expireMillis = System.currentTimeMillis() + unit.toMillis(time);
+            setBytes(key, cacheCodec.encode(r, expireMillis), time * 2, unit);
+        } else {
+            // 存在，写入Redis
+            this.set(key, r, time, unit);
+        }
+        // 通知其他节点重建完成
+        stringRedisTemplate.convertAndSend(CACHE_REBUILT_CHANNEL, key);
         return r;
     }
 
+    private void awaitRebuilt(String key, long timeoutMillis) {
+        CompletableFuture<Void> future = rebuildWaiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // 超时由调用方重新检查缓存
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            rebuildWaiters.remove(key, future);
+        }
+    }
+
+    private boolean isUsable(byte[] bytes, boolean logical) {
+        // 逻辑过期模式下，已过期的数据视为未命中（空值除外）
+        return bytes != null && (!logical || bytes.length == 0 || !isLogicalExpired(bytes));
+    }
+
+    private boolean isLogicalExpired(byte[] bytes) {
+        // 只读取过期时间，不反序列化数据
+        return bytes == null || bytes.length == 0 || cacheCodec.expireMillis(bytes) <= System.currentTimeMillis();
+    }
+
+    /**
+     * 批量查询逻辑过期缓存：一次MGET查询Redis，未命中或已过期的id合并为一次数据库查询，再通过管道一次写回Redis。
+     * 列表调用方会修改返回的对象（如距离、点赞状态），因此这里不使用一级缓存，每次返回新解析的对象
+     * @param ids 要查询的id，结果按该顺序返回，数据库中不存在的id会被跳过
+     * @param batchDbFallback 根据id批量查询数据库，返回id与数据的映射
+     * @return 数据列表
+     */
+    public <R, ID> List<R> queryBatch(String keyPrefix, List<ID> ids, Class<R> type,
+                                      Function<List<ID>, Map<ID, R>> batchDbFallback, Long time, TimeUnit unit) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 过滤掉布隆过滤器判断不存在的id
+        ids = ids.stream().filter(id -> bloomFilterClient.mightContain(keyPrefix, id)).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 一次MGET批量查询Redis
+        byte[][] keys = ids.stream().map(id -> toBytes(keyPrefix + id)).toArray(byte[][]::new);
+        List<byte[]> list = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        // 解析命中的数据，收集未命中或已过期的id
+        Map<ID, R> values = new HashMap<>(ids.size());
+        List<ID> misses = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] bytes = list == null ? null : list.get(i);
+            // 空值即数据库中不存在，命中空值直接跳过，不再查询数据库
+            if (bytes != null && bytes.length == 0) {
+                continue;
+            }
+            // 已过期的数据无需反序列化
+            if (isLogicalExpired(bytes)) {
+                misses.add(ids.get(i));
+                continue;
+            }
+            values.put(ids.get(i), cacheCodec.decode(bytes, type));
+        }
+        // 未命中的id一次查询数据库，并批量写回Redis
+        if (!misses.isEmpty()) {
+            Map<ID, R> loaded = batchDbFallback.apply(misses);
+            if (loaded == null) {
+                loaded = Collections.emptyMap();
+            }
+            setBatchWithLogicalExpire(keyPrefix, loaded, time, unit);
+            values.putAll(loaded);
+            // 数据库中也不存在的id写入空值，防止缓存穿透
+            List<ID> absent = new ArrayList<>();
+            for (ID id : misses) {
+                if (!loaded.containsKey(id)) {
+                    absent.add(id);
+                }
+            }
+            setNullBatch(keyPrefix, absent);
+        }
+        // 按传入的id顺序返回
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = values.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    private <R> R getLocal(String key, Class<R> type) {
+        LocalEntry entry = localCache.getIfPresent(key);
+        if (entry == null || !type.isInstance(entry.value)) {
+            return null;
+        }
+        return type.cast(entry.value);
+    }
+
+    private void putLocal(String key, Object value, long expireMillis, int weight) {
+        // 一级缓存的过期时间取逻辑过期时间与最长存活时间中较早的一个
+        long localExpireMillis = Math.min(expireMillis,
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CACHE_LOCAL_MAX_TTL));
+        localCache.put(key, new LocalEntry(value, localExpireMillis, weight));
+    }
+
+    /**
+     * 热点key写入本地缓存，存活时间较短
+     */
+    private void pinIfHot(String key, boolean hot, Object value, int weight) {
+        if (hot) {
+            putLocal(key, value, System.currentTimeMillis() + hotKey.getLocalTtl().toMillis(), weight);
+        }
+    }
+
+    /**
+     * 读取缓存：热点key随机读取一个副本，分散到不同的Redis分片，副本不存在时读取主key并回填副本；
+     * 副本只由把该key视为热点的节点写入，其他节点重建后副本可能仍是旧数据，副本已逻辑过期时读取主key，主key更新时回填副本
+     */
+    private byte[] readBytes(String key, boolean hot) {
+        if (!hot || hotKey.getReplicas() <= 0) {
+            return getBytes(key);
+        }
+        String replicaKey = replicaKey(key, ThreadLocalRandom.current().nextInt(hotKey.getReplicas()));
+        byte[] bytes = getBytes(replicaKey);
+        if (bytes == null) {
+            bytes = getBytes(key);
+            if (bytes != null) {
+                setReplica(replicaKey, bytes);
+            }
+            return bytes;
+        }
+        // 空值标记没有逻辑过期时间
+        long replicaExpire = bytes.length == 0 ? 0 : cacheCodec.expireMillis(bytes);
+        if (replicaExpire > 0 && replicaExpire <= System.currentTimeMillis()) {
+            byte[] main = getBytes(key);
+            if (main != null && cacheCodec.expireMillis(main) > replicaExpire) {
+                setReplica(replicaKey, main);
+                return main;
+            }
+        }
+        return bytes;
+    }
+
+    private void setReplica(String replicaKey, byte[] value) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(
+                toBytes(replicaKey), value, replicaExpiration(null, null),
+                RedisStringCommands.SetOption.upsert()));
+    }
+
+    private List<String> replicaKeys(String key) {
+        List<String> keys = new ArrayList<>(hotKey.getReplicas());
+        for (int i = 0; i < hotKey.getReplicas(); i++) {
+            keys.add(replicaKey(key, i));
+        }
+        return keys;
+    }
+
+    private List<String> hotReplicaKeys(String key) {
+        return hotKeyDetector.isHot(key) ? replicaKeys(key) : Collections.emptyList();
+    }
+
+    private static String replicaKey(String key, int n) {
+        return key + ":r" + n;
+    }
+
+    /**
+     * 副本有效期：取主key有效期与副本有效期中较短的一个
+     */
+    private Expiration replicaExpiration(Long time, TimeUnit unit) {
+        long millis = hotKey.getReplicaTtl().toMillis();
+        if (time != null) {
+            millis = Math.min(millis, unit.toMillis(time));
+        }
+        return Expiration.milliseconds(millis);
+    }
+
+    private byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(toBytes(key)));
+    }
+
+    /**
+     * 写入Redis，热点key同时写入副本
+     * @param time 有效期，为null时不设置有效期
+     */
+    private void setBytes(String key, byte[] value, Long time, TimeUnit unit) {
+        Expiration expiration = time == null ? Expiration.persistent() : Expiration.from(time, unit);
+        List<String> replicaKeys = hotReplicaKeys(key);
+        if (replicaKeys.isEmpty()) {
+            stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(
+                    toBytes(key), value, expiration, RedisStringCommands.SetOption.upsert()));
+            return;
+        }
+        // 主key与副本通过管道一次写入
+        Expiration replicaExpiration = replicaExpiration(time, unit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.set(toBytes(key), value, expiration, RedisStringCommands.SetOption.upsert());
+            for (String replicaKey : replicaKeys) {
+                connection.set(toBytes(replicaKey), value, replicaExpiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    private static byte[] toBytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
     private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 5, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
@@ -130,4 +700,41 @@ public class CacheClient {
         stringRedisTemplate.delete(key);
     }
 
+    private static class LocalEntry {
+        private final Object value;
+        private final long expireMillis;
+        private final int weight;
+
+        private LocalEntry(Object value, long expireMillis, int weight) {
+            this.value = value;
+            this.expireMillis = expireMillis;
+            this.weight = weight;
+        }
+
+        private long remainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expireMillis - System.currentTimeMillis()));
+        }
+    }
+
+
+    /**
+     * 访问频率统计：热度为上一周期与当前周期的访问次数之和，超过两个周期未访问则清零
+     */
+    private static class AccessStats {
+        private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+        private final AtomicInteger current = new AtomicInteger();
+        private volatile int previous;
+        // Redis中数据的逻辑过期时间，0表示未知
+        private volatile long expireMillis;
+
+        private int record(long now, long periodMillis) {
+            long start = windowStart.get();
+            if (now - start >= periodMillis && windowStart.compareAndSet(start, now)) {
+                // 进入新的统计周期
+                int count = current.getAndSet(0);
+                previous = now - start >= 2 * periodMillis ? 0 : count;
+            }
+            return previous + current.incrementAndGet();
+        }
+    }
 }
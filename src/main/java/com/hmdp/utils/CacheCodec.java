@@ -0,0 +1,32 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的序列化方式
+ *
+ * @author Kiro
+ */
+public interface CacheCodec {
+
+    /**
+     * 序列化
+     * @param value 缓存数据
+     * @param expireMillis 逻辑过期时间（毫秒时间戳），0表示没有逻辑过期时间
+     * @return 写入Redis的字节
+     */
+    byte[] encode(Object value, long expireMillis);
+
+    /**
+     * 反序列化
+     * @param bytes Redis中的字节
+     * @param type 数据类型
+     * @return 缓存数据
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 读取逻辑过期时间，不需要反序列化数据本身
+     * @param bytes Redis中的字节
+     * @return 逻辑过期时间（毫秒时间戳），0表示没有逻辑过期时间
+     */
+    long expireMillis(byte[] bytes);
+}
@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.CacheInvalidation;
+import com.hmdp.mapper.CacheInvalidationMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * 事务提交后删除缓存：删除请求先与业务数据在同一个事务中写入发件箱表，
+ * 事务提交后交给后台线程批量删除，并在延迟后再删除一次（延迟双删），两次都成功才删除发件箱记录；
+ * 删除失败按指数退避重试，节点宕机遗留的记录由补偿任务定期扫描发件箱接管
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+
+    private final CacheClient cacheClient;
+
+    private final CacheInvalidationMapper cacheInvalidationMapper;
+
+    private final CacheProperties.Invalidation config;
+
+    // 事务已提交、等待删除的记录
+    private final BlockingQueue<CacheInvalidation> queue = new LinkedBlockingQueue<>();
+
+    private final Thread worker;
+
+    // 延迟双删和补偿扫描
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CacheInvalidator(CacheClient cacheClient,
+                            CacheInvalidationMapper cacheInvalidationMapper,
+                            CacheProperties cacheProperties) {
+        this.cacheClient = cacheClient;
+        this.cacheInvalidationMapper = cacheInvalidationMapper;
+        this.config = cacheProperties.getInvalidation();
+        this.worker = new Thread(this::drain, "cache-invalidation-worker");
+        this.worker.setDaemon(true);
+        this.worker.start();
+        long poll = config.getPollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::recover, poll, poll, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在当前事务提交后删除缓存；没有事务时立即删除
+     * @param key 缓存key
+     */
+    public void invalidateAfterCommit(String key) {
+        // 写入发件箱，与业务数据一起提交或回滚
+        CacheInvalidation record = new CacheInvalidation()
+                .setCacheKey(key)
+                .setRetryCount(0)
+                .setNextRetryTime(LocalDateTime.now().plus(config.getRecoveryDelay()));
+        cacheInvalidationMapper.insert(record);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            queue.offer(record);
+            return;
+        }
+        // 事务提交后再删除，避免并发读请求在提交前用旧数据回填缓存
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                queue.offer(record);
+            }
+        });
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // 阻塞等待第一条，再一次取出已到达的其余记录，合并为一批
+                List<CacheInvalidation> batch = new ArrayList<>(config.getBatchSize());
+                batch.add(queue.take());
+                queue.drainTo(batch, config.getBatchSize() - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("处理缓存失效异常", e);
+            }
+        }
+    }
+
+    private void process(List<CacheInvalidation> batch) {
+        try {
+            cacheClient.evictBatch(keys(batch));
+        } catch (Exception e) {
+            log.warn("删除缓存失败，稍后重试，key：{}", keys(batch), e);
+            retryLater(batch);
+            return;
+        }
+        // 延迟双删：删除期间并发读请求可能已用旧数据回填缓存，延迟后再删除一次
+        scheduler.schedule(() -> {
+            try {
+                cacheClient.evictBatch(keys(batch));
+                cacheInvalidationMapper.deleteBatchIds(
+                        batch.stream().map(CacheInvalidation::getId).collect(Collectors.toList()));
+            } catch (Exception e) {
+                log.warn("延迟双删失败，稍后重试，key：{}", keys(batch), e);
+                retryLater(batch);
+            }
+        }, config.getDoubleDeleteDelay().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void retryLater(List<CacheInvalidation> batch) {
+        for (CacheInvalidation record : batch) {
+            // 指数退避：1s、2s、4s……不超过最大间隔
+            int retryCount = record.getRetryCount() == null ? 1 : record.getRetryCount() + 1;
+            long backoff = Math.min(config.getMaxBackoff().getSeconds(), 1L << Math.min(retryCount - 1, 30));
+            try {
+                cacheInvalidationMapper.updateById(new CacheInvalidation()
+                        .setId(record.getId())
+                        .setRetryCount(retryCount)
+                        .setNextRetryTime(LocalDateTime.now().plusSeconds(backoff)));
+            } catch (Exception e) {
+                // 更新失败时记录仍保留在发件箱中，由补偿任务按原计划时间处理
+                log.error("更新缓存失效重试时间失败，id：{}", record.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * 补偿：处理到期仍未完成的发件箱记录，包括失败重试和节点宕机遗留的记录
+     */
+    private void recover() {
+        try {
+            List<CacheInvalidation> records = cacheInvalidationMapper.selectList(new QueryWrapper<CacheInvalidation>()
+                    .le("next_retry_time", LocalDateTime.now())
+                    .orderByAsc("id")
+                    .last("limit " + config.getBatchSize()));
+            if (records.isEmpty()) {
+                return;
+            }
+            // 先推迟下次处理时间，避免本批处理完成前被重复扫描
+            cacheInvalidationMapper.update(null, new UpdateWrapper<CacheInvalidation>()
+                    .set("next_retry_time", LocalDateTime.now().plus(config.getRecoveryDelay()))
+                    .in("id", records.stream().map(CacheInvalidation::getId).collect(Collectors.toList())));
+            queue.addAll(records);
+        } catch (Exception e) {
+            log.error("扫描缓存失效发件箱失败", e);
+        }
+    }
+
+    private static Set<String> keys(List<CacheInvalidation> batch) {
+        Set<String> keys = new LinkedHashSet<>(batch.size());
+        for (CacheInvalidation record : batch) {
+            keys.add(record.getCacheKey());
+        }
+        return keys;
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        // 未处理的记录仍在发件箱中，由补偿任务接管
+        worker.interrupt();
+        scheduler.shutdownNow();
+    }
+}
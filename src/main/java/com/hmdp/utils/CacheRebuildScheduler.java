@@ -0,0 +1,130 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.CACHE_REBUILD_QUEUE_CAPACITY;
+import static com.hmdp.utils.RedisConstants.CACHE_REBUILD_THREADS;
+
+/**
+ * 逻辑过期缓存的重建调度器，所有缓存重建共用一个有界线程池：
+ * 同一个key排队或执行中时不会重复提交；队列已满时放弃本次重建，调用方继续返回旧数据，等下一次访问再触发
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler {
+
+    // 排队或执行中的key
+    private final ConcurrentHashMap<String, Boolean> pending = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor executor;
+
+    private final Timer latency;
+    private final Counter failures;
+    private final Counter rejected;
+    private final Counter deduplicated;
+
+    public CacheRebuildScheduler(MeterRegistry meterRegistry) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(CACHE_REBUILD_THREADS, CACHE_REBUILD_THREADS,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(CACHE_REBUILD_QUEUE_CAPACITY),
+                r -> new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet()),
+                new StaleServingPolicy());
+        // 暴露队列长度、重建耗时、失败次数等指标
+        Gauge.builder("cache.rebuild.queue", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数")
+                .register(meterRegistry);
+        this.latency = Timer.builder("cache.rebuild.latency")
+                .description("缓存重建耗时")
+                .register(meterRegistry);
+        this.failures = Counter.builder("cache.rebuild.failures")
+                .description("缓存重建失败次数")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("cache.rebuild.rejected")
+                .description("队列已满被放弃的缓存重建次数")
+                .register(meterRegistry);
+        this.deduplicated = Counter.builder("cache.rebuild.deduplicated")
+                .description("同一个key已在排队而被合并的缓存重建次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交缓存重建任务
+     * @param key 缓存key，同一个key同一时刻只有一个任务
+     * @param task 重建逻辑
+     * @return true：提交成功，false：已有相同key的任务或队列已满，调用方应继续返回旧数据
+     */
+    public boolean submit(String key, Runnable task) {
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null) {
+            deduplicated.increment();
+            return false;
+        }
+        RebuildTask rebuildTask = new RebuildTask(key, task);
+        executor.execute(rebuildTask);
+        return !rebuildTask.dropped;
+    }
+
+    @PreDestroy
+    private void shutdown() throws InterruptedException {
+        // 不再接收新任务，等待已提交的重建完成
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("缓存重建任务未在5秒内完成，强制关闭，剩余任务数：{}", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+
+    private class RebuildTask implements Runnable {
+        private final String key;
+        private final Runnable task;
+        private volatile boolean dropped;
+
+        RebuildTask(String key, Runnable task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // 记录异常，避免被线程池吞掉
+                failures.increment();
+                log.error("缓存重建失败，key：{}", key, e);
+            } finally {
+                latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 拒绝策略：不抛异常、不占用调用线程，放弃本次重建，调用方继续返回旧数据
+     */
+    private class StaleServingPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            RebuildTask task = (RebuildTask) r;
+            task.dropped = true;
+            pending.remove(task.key);
+            rejected.increment();
+            log.warn("缓存重建队列已满，继续返回旧数据，key：{}", task.key);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch，用固定大小的计数矩阵估算元素出现次数：估计值只会偏大不会偏小，
+ * 误差上限约为 总次数 * e / width，出错概率约为 e^-depth
+ *
+ * @author Kiro
+ */
+public class CountMinSketch {
+
+    // 行数，即哈希函数个数
+    private final int depth;
+    // 每行的计数器个数
+    private final int width;
+    private final AtomicLongArray counts;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.counts = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 增加计数
+     * @return 增加后的估计值
+     */
+    public long add(String item, long count) {
+        long[] hash = MurmurHash.hash128(item);
+        long combined = hash[0];
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = i * width + (int) ((combined & Long.MAX_VALUE) % width);
+            min = Math.min(min, counts.addAndGet(index, count));
+            combined += hash[1];
+        }
+        return min;
+    }
+
+    /**
+     * 估计值：各行计数的最小值
+     */
+    public long estimate(String item) {
+        long[] hash = MurmurHash.hash128(item);
+        long combined = hash[0];
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = i * width + (int) ((combined & Long.MAX_VALUE) % width);
+            min = Math.min(min, counts.get(index));
+            combined += hash[1];
+        }
+        return min;
+    }
+
+    /**
+     * 衰减：所有计数减半，使估计值反映最近的访问频率
+     */
+    public void decay() {
+        for (int i = 0; i < counts.length(); i++) {
+            long count;
+            do {
+                count = counts.get(i);
+            } while (count != 0 && !counts.compareAndSet(i, count, count >>> 1));
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.FeedProperties;
+import com.hmdp.entity.Follow;
+import com.hmdp.service.IFollowService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * Blog推送（写扩散）：发布Blog时只向推送队列发送一条消息，由后台消费者按粉丝表主键分批读取粉丝id，
+ * 每批用管道ZADD到各粉丝收件箱并裁剪到最大长度。ZADD的分数为发布时间，重复推送结果相同，
+ * 消费者中途宕机时由其他消费者认领消息从头重新推送即可。
+ * 每篇Blog推送完成时记录从发布到推送完成的延迟（feed.fanout.lag）。
+ * 粉丝数达到阈值的作者（大V）标记后只写入自己的发件箱，不再推送，粉丝读取Feed时合并关注的大V的发件箱
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class FeedFanout {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final IFollowService followService;
+
+    private final FeedProperties feedProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final InstanceId instanceId;
+
+    private ExecutorService fanoutExecutor;
+
+    private Timer lagTimer;
+
+    private volatile boolean running = true;
+
+    public FeedFanout(StringRedisTemplate stringRedisTemplate, IFollowService followService,
+                      FeedProperties feedProperties, MeterRegistry meterRegistry, InstanceId instanceId) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followService = followService;
+        this.feedProperties = feedProperties;
+        this.meterRegistry = meterRegistry;
+        this.instanceId = instanceId;
+    }
+
+    @PostConstruct
+    private void init() {
+        // 创建消费者组，队列不存在时一并创建：XGROUP CREATE stream.feed g1 0 MKSTREAM
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    FEED_FANOUT_STREAM.getBytes(StandardCharsets.UTF_8), FEED_FANOUT_GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            // 消费者组已存在（BUSYGROUP）
+            log.debug("推送消费者组已存在：{}", e.getMessage());
+        }
+        lagTimer = Timer.builder("feed.fanout.lag")
+                .description("Blog从发布到推送到所有粉丝收件箱的延迟")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        // 未推送完的Blog数：已确认的消息会被删除，队列长度即为积压数
+        Gauge.builder("feed.fanout.backlog", FEED_FANOUT_STREAM, key -> {
+                    Long size = stringRedisTemplate.opsForStream().size(key);
+                    return size == null ? 0 : size;
+                })
+                .description("推送队列中未推送完的Blog数")
+                .register(meterRegistry);
+
+        int consumers = feedProperties.getFanoutConsumers();
+        AtomicInteger threadIndex = new AtomicInteger();
+        fanoutExecutor = Executors.newFixedThreadPool(consumers, r -> {
+            Thread thread = new Thread(r, "feed-fanout-consumer-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 消费者名称为 节点标识-序号，重启后不变，多个节点共同消费同一个消费者组
+        for (int i = 0; i < consumers; i++) {
+            fanoutExecutor.submit(new FanoutHandler(instanceId.get() + "-" + i));
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        running = false;
+        fanoutExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交推送任务
+     * @param blogId Blog id
+     * @param authorId 作者id
+     * @param time 发布时间（毫秒），作为收件箱中的分数
+     */
+    public void publish(Long blogId, Long authorId, long time) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_BIG_ACCOUNT_KEY, authorId.toString()))) {
+            // 大V直接写入发件箱，不需要推送
+            writeOutbox(blogId.toString(), authorId, time);
+            return;
+        }
+        Map<String, String> message = new HashMap<>(4);
+        message.put("blogId", blogId.toString());
+        message.put("userId", authorId.toString());
+        message.put("time", String.valueOf(time));
+        stringRedisTemplate.opsForStream().add(FEED_FANOUT_STREAM, message);
+    }
+
+    private void writeOutbox(String blogId, Long authorId, long time) {
+        String key = FEED_OUTBOX_KEY + authorId;
+        long trimEnd = -(feedProperties.getOutboxMaxSize() + 1L);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.zAdd(key, time, blogId);
+            stringConnection.zRemRange(key, 0, trimEnd);
+            return null;
+        });
+    }
+
+    /**
+     * 按粉丝表主键分批读取粉丝，每批一次管道推送并裁剪收件箱；粉丝数达到阈值时标记为大V，改为写入发件箱
+     * @return 推送的粉丝数，写入发件箱时为0
+     */
+    private int fanout(String blogId, Long authorId, long time) {
+        // select count(*) from tb_follow where follow_user_id = ?
+        Integer followers = followService.query().eq("follow_user_id", authorId).count();
+        if (followers != null && followers >= feedProperties.getBigAccountThreshold()) {
+            // 先标记再写发件箱，之后发布的Blog直接写入发件箱；标记前已推送的Blog留在粉丝收件箱中，不会重复
+            stringRedisTemplate.opsForSet().add(FEED_BIG_ACCOUNT_KEY, authorId.toString());
+            writeOutbox(blogId, authorId, time);
+            log.info("作者{}粉丝数{}，标记为大V，改为写入发件箱", authorId, followers);
+            return 0;
+        }
+        int batchSize = feedProperties.getFanoutBatchSize();
+        // 保留分数最高的inboxMaxSize个，ZREMRANGEBYRANK key 0 -(max+1)
+        long trimEnd = -(feedProperties.getInboxMaxSize() + 1L);
+        long lastId = 0;
+        int total = 0;
+        while (true) {
+            // select id, user_id from tb_follow where follow_user_id = ? and id > ? order by id limit n
+            List<Follow> follows = followService.query()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + batchSize)
+                    .list();
+            if (follows.isEmpty()) {
+                return total;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Follow follow : follows) {
+                    String key = FEED_KEY + follow.getUserId();
+                    stringConnection.zAdd(key, time, blogId);
+                    stringConnection.zRemRange(key, 0, trimEnd);
+                }
+                return null;
+            });
+            total += follows.size();
+            if (follows.size() < batchSize) {
+                return total;
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+    }
+
+    private class FanoutHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        private long lastClaimTime;
+
+        // pending-list中连续处理失败的消息及本消费者处理失败的次数
+        private RecordId failedId;
+        private int failures;
+
+        FanoutHandler(String name) {
+            this.consumer = Consumer.from(FEED_FANOUT_GROUP, name);
+        }
+
+        @Override
+        public void run() {
+            // 启动时先处理pending-list：认领已宕机消费者未确认的消息，再处理本消费者未确认的消息
+            handlePendingList();
+            while (running) {
+                try {
+                    // 定期认领其他消费者超时未确认的消息
+                    if (System.currentTimeMillis() - lastClaimTime > feedProperties.getFanoutClaimIdle().toMillis()) {
+                        handlePendingList();
+                    }
+                    // 一条消息对应一篇Blog，XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.feed >
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(FEED_FANOUT_STREAM, ReadOffset.lastConsumed())
+                    );
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    handleRecord(list.get(0));
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("推送Blog异常", e);
+                    // 未确认的消息留在pending-list中，处理pending-list
+                    handlePendingList();
+                }
+            }
+        }
+
+        private void handlePendingList() {
+            lastClaimTime = System.currentTimeMillis();
+            claimIdleMessages();
+            while (running) {
+                try {
+                    // XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.feed 0
+                    @SuppressWarnings("unchecked")
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(1),
+                            StreamOffset.create(FEED_FANOUT_STREAM, ReadOffset.from("0"))
+                    );
+                    if (list == null || list.isEmpty()) {
+                        break;
+                    }
+                    MapRecord<String, Object, Object> record = list.get(0);
+                    try {
+                        handleRecord(record);
+                    } catch (Exception e) {
+                        if (deadLetterIfExhausted(record, e)) {
+                            continue;
+                        }
+                        throw e;
+                    }
+                } catch (Exception e) {
+                    log.error("处理pending-list推送消息异常", e);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 认领其他消费者超时未确认的消息，认领后进入本消费者的pending-list
+         */
+        private void claimIdleMessages() {
+            try {
+                Duration minIdle = feedProperties.getFanoutClaimIdle();
+                PendingMessages pending = stringRedisTemplate.opsForStream()
+                        .pending(FEED_FANOUT_STREAM, FEED_FANOUT_GROUP, Range.unbounded(), 100);
+                RecordId[] ids = pending.stream()
+                        .filter(p -> !p.getConsumerName().equals(consumer.getName()))
+                        .filter(p -> p.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+                        .map(PendingMessage::getId)
+                        .toArray(RecordId[]::new);
+                if (ids.length == 0) {
+                    return;
+                }
+                List<RecordId> claimed = stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                        connection.streamCommands().xClaimJustId(
+                                FEED_FANOUT_STREAM.getBytes(StandardCharsets.UTF_8), FEED_FANOUT_GROUP, consumer.getName(),
+                                RedisStreamCommands.XClaimOptions.minIdle(minIdle).ids(ids)));
+                if (claimed != null && !claimed.isEmpty()) {
+                    log.info("消费者{}认领超时未确认的推送消息{}条", consumer.getName(), claimed.size());
+                }
+            } catch (Exception e) {
+                log.error("认领推送消息失败", e);
+            }
+        }
+
+        /**
+         * 处理失败的次数达到上限时，把消息转入死信队列并确认，避免一条无法处理的消息（如Blog已删除、字段错误）永远阻塞pending-list；
+         * 处理次数取本消费者的失败次数与XPENDING中的投递次数（含其他消费者认领）中较大的一个
+         * @return 是否已转入死信队列
+         */
+        private boolean deadLetterIfExhausted(MapRecord<String, Object, Object> record, Exception e) {
+            if (!record.getId().equals(failedId)) {
+                failedId = record.getId();
+                failures = 0;
+            }
+            failures++;
+            long attempts = failures;
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(FEED_FANOUT_STREAM, consumer,
+                    Range.closed(record.getId().getValue(), record.getId().getValue()), 1);
+            if (!pending.isEmpty()) {
+                attempts = Math.max(attempts, pending.get(0).getTotalDeliveryCount());
+            }
+            if (attempts < feedProperties.getFanoutMaxAttempts()) {
+                return false;
+            }
+            Map<Object, Object> value = new HashMap<>(record.getValue());
+            value.put("error", String.valueOf(e));
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(FEED_FANOUT_DEAD_LETTER_STREAM).ofMap(value));
+            stringRedisTemplate.opsForStream().acknowledge(FEED_FANOUT_STREAM, FEED_FANOUT_GROUP, record.getId());
+            stringRedisTemplate.opsForStream().delete(FEED_FANOUT_STREAM, record.getId());
+            log.error("推送消息{}处理{}次仍失败，转入死信队列{}", record.getId(), attempts, FEED_FANOUT_DEAD_LETTER_STREAM, e);
+            failedId = null;
+            return true;
+        }
+
+        private void handleRecord(MapRecord<String, Object, Object> record) {
+            Map<Object, Object> value = record.getValue();
+            String blogId = value.get("blogId").toString();
+            Long authorId = Long.valueOf(value.get("userId").toString());
+            long time = Long.parseLong(value.get("time").toString());
+            int followers = fanout(blogId, authorId, time);
+            // 推送完成，ACK确认并从队列中删除
+            stringRedisTemplate.opsForStream().acknowledge(FEED_FANOUT_STREAM, FEED_FANOUT_GROUP, record.getId());
+            stringRedisTemplate.opsForStream().delete(FEED_FANOUT_STREAM, record.getId());
+            long lag = System.currentTimeMillis() - time;
+            lagTimer.record(lag, TimeUnit.MILLISECONDS);
+            log.debug("Blog {}推送完成，粉丝数：{}，延迟：{}ms", blogId, followers, lag);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点key探测：按采样率把key的访问计入Count-Min Sketch，估计值达到阈值的key进入Top-K热点集合；
+ * 每个统计周期所有计数减半，访问量下降的key随之退出热点集合
+ *
+ * @author Kiro
+ */
+@Component
+public class HotKeyDetector {
+
+    private final CacheProperties.HotKey config;
+
+    private final CountMinSketch sketch = new CountMinSketch(4, 4096);
+
+    // 热点key -> 估计访问次数，最多保留topK个
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService decayExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-key-decay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public HotKeyDetector(CacheProperties cacheProperties, MeterRegistry meterRegistry) {
+        this.config = cacheProperties.getHotKey();
+        long period = config.getPeriod().toMillis();
+        decayExecutor.scheduleAtFixedRate(this::decay, period, period, TimeUnit.MILLISECONDS);
+        Gauge.builder("cache.hotkey.count", hotKeys, Map::size)
+                .description("当前热点key个数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次访问
+     * @return 该key当前是否为热点key
+     */
+    public boolean record(String key) {
+        double sampleRate = config.getSampleRate();
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            // 未被采样，只判断是否已是热点
+            return hotKeys.containsKey(key);
+        }
+        // 按采样率放大计数，使估计值接近真实访问次数
+        long estimate = sketch.add(key, Math.max(1, Math.round(1 / sampleRate)));
+        if (estimate < config.getThreshold()) {
+            return hotKeys.containsKey(key);
+        }
+        hotKeys.put(key, estimate);
+        if (hotKeys.size() > config.getTopK()) {
+            // 超过Top-K，淘汰估计值最小的key
+            hotKeys.entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .ifPresent(min -> hotKeys.remove(min.getKey(), min.getValue()));
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 当前热点key，按估计访问次数降序
+     */
+    public Map<String, Long> hotKeys() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        hotKeys.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private void decay() {
+        sketch.decay();
+        // 重新估计热点key，低于阈值的退出热点集合
+        for (String key : hotKeys.keySet()) {
+            long estimate = sketch.estimate(key);
+            if (estimate < config.getThreshold()) {
+                hotKeys.remove(key);
+            } else {
+                hotKeys.put(key, estimate);
+            }
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        decayExecutor.shutdownNow();
+    }
+}
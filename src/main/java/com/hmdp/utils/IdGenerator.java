@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一id生成器，通过hmdp.id.generator选择实现：redis为RedisIdWorker，snowflake为SnowflakeIdGenerator
+ *
+ * @author Kiro
+ */
+public interface IdGenerator {
+
+    /**
+     * @param keyPrefix 业务前缀，不同业务的序列号可以独立计数
+     */
+    long nextId(String keyPrefix);
+}
@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.InstanceProperties;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 节点标识：重启前后保持不变，消息队列的消费者使用 节点标识-序号 作为名称，
+ * 重启后以相同的名称继续处理自己pending-list中的消息，不必等其他消费者超时认领
+ *
+ * @author Kiro
+ */
+@Component
+public class InstanceId {
+
+    private final String id;
+
+    public InstanceId(InstanceProperties instanceProperties, ServerProperties serverProperties) {
+        String configured = instanceProperties.getId();
+        if (configured != null && !configured.isEmpty()) {
+            this.id = configured;
+            return;
+        }
+        // 同一主机上的多个节点按端口区分
+        Integer port = serverProperties.getPort();
+        this.id = hostName() + ":" + (port == null ? 8080 : port);
+    }
+
+    public String get() {
+        return id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("无法获取主机名，请配置hmdp.instance.id", e);
+        }
+    }
+}
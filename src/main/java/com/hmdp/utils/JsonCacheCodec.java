@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * JSON序列化，与原有缓存格式一致：有逻辑过期时间的数据包装为{@link RedisData}，否则直接写入数据的JSON
+ *
+ * @author Kiro
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value, long expireMillis) {
+        if (expireMillis <= 0) {
+            return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+        }
+        // 设置逻辑过期
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        if (isRedisData(json)) {
+            // 逻辑过期数据，取出其中的data
+            JSONObject data = json.getJSONObject("data");
+            return data == null ? null : JSONUtil.toBean(data, type);
+        }
+        return JSONUtil.toBean(json, type);
+    }
+
+    @Override
+    public long expireMillis(byte[] bytes) {
+        JSONObject json = JSONUtil.parseObj(new String(bytes, StandardCharsets.UTF_8));
+        if (!isRedisData(json)) {
+            return 0;
+        }
+        LocalDateTime expireTime = JSONUtil.toBean(json, RedisData.class).getExpireTime();
+        return expireTime == null ? 0 : expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private boolean isRedisData(JSONObject json) {
+        // 数据为null时JSON中不包含data字段
+        return json.size() <= 2 && json.containsKey("expireTime") && (json.size() == 1 || json.containsKey("data"));
+    }
+}
@@ -5,6 +5,12 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    // 登出广播频道，消息为token
+    public static final String LOGIN_LOGOUT_CHANNEL = "login:logout";
+    // 已登出的签名token，zset结构：token id -> 过期时间（毫秒）
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    // 签名token登出广播频道，消息为 token id:过期时间
+    public static final String LOGIN_REVOKE_CHANNEL = "login:revoke";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
@@ -12,12 +18,81 @@ public class RedisConstants {
     public static final String CACHE_SHOP_KEY = "cache:shop:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type:";
 
+    public static final Long CACHE_BLOG_TTL = 10L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    // 本地缓存（L1）容量上限，按缓存数据在Redis中的字节数计算权重
+    public static final Long CACHE_LOCAL_MAX_WEIGHT = 16 * 1024 * 1024L;
+    // 本地缓存最长存活时间（秒），即使逻辑过期时间更长也不超过该值，限制跨节点数据不一致的窗口
+    public static final Long CACHE_LOCAL_MAX_TTL = 60L;
+    // 本地缓存失效广播频道
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    // 缓存重建完成广播频道
+    public static final String CACHE_REBUILT_CHANNEL = "cache:rebuilt";
+    // 逻辑过期缓存重建线程数
+    public static final Integer CACHE_REBUILD_THREADS = 10;
+    // 缓存重建等待队列容量，队列已满时放弃重建，继续返回旧数据
+    public static final Integer CACHE_REBUILD_QUEUE_CAPACITY = 1000;
+
+    // 布隆过滤器Redis位图key前缀
+    public static final String BLOOM_KEY = "bloom:";
+    // 布隆过滤器新增元素广播频道
+    public static final String BLOOM_ADD_CHANNEL = "bloom:add";
+    public static final Long BLOOM_EXPECTED_INSERTIONS = 1000000L;
+    public static final Double BLOOM_FPP = 0.01;
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    // 未抢到重建锁时，单次等待重建完成通知的最长时间（毫秒）
+    public static final Long LOCK_WAIT_MILLIS = 200L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    // 分片功能上线前的已购买用户集合（set结构），只在下单脚本中迁移读取
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    // 用户已购买数量，hash结构：用户id -> 已购买数量
+    public static final String SECKILL_ORDER_COUNT_KEY = "seckill:order:cnt:";
+    // 秒杀库存分片数
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_INFO_KEY = "seckill:info:";
+    // 已扣减库存、尚未写入数据库的订单
+    public static final String SECKILL_PENDING_KEY = "seckill:pending:";
+    // 分片间库存借调的转移记录及已存入的转移id（小时）
+    public static final String SECKILL_TRANSFER_KEY = "seckill:transfer:";
+    public static final String SECKILL_DEPOSITED_KEY = "seckill:deposited:";
+    public static final Long SECKILL_DEPOSITED_TTL = 24L;
+    // 秒杀券售罄/补充库存广播频道，消息格式：券id:1表示售罄，券id:0表示补充了库存
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    // 秒杀订单消息队列及消费者组
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    // 秒杀订单处理结果及订单完成广播频道
+    public static final String SECKILL_ORDER_STATUS_KEY = "seckill:order:status:";
+    public static final String SECKILL_ORDER_DONE_CHANNEL = "seckill:order:done";
+    // 秒杀全局限流计数：每张券、每个用户在每张券上
+    public static final String RATE_LIMIT_SECKILL_VOUCHER_KEY = "rate:seckill:voucher:";
+    public static final String RATE_LIMIT_SECKILL_USER_KEY = "rate:seckill:user:";
+    // Snowflake worker id租约及各worker id最后使用的时间戳
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_TIME_KEY = "id:worker:time:";
+    public static final String LOCK_SECKILL_REBALANCE_KEY = "lock:seckill:rebalance";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    // 点赞数待写回数据库的Blog id，set结构；写回时改名为flushing，写回成功后删除，两个key带有相同的hash tag
+    public static final String BLOG_LIKE_DIRTY_KEY = "blog:like:{dirty}";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like:{dirty}:flushing";
+    public static final String LOCK_BLOG_LIKE_FLUSH_KEY = "lock:blog:like:flush";
     public static final String FEED_KEY = "feed:";
+    // Blog推送任务队列，消息字段：blogId、userId（作者）、time（发布时间，毫秒）
+    public static final String FEED_FANOUT_STREAM = "stream.feed";
+    public static final String FEED_FANOUT_GROUP = "g1";
+    // 多次处理失败的推送消息
+    public static final String FEED_FANOUT_DEAD_LETTER_STREAM = "stream.feed.dlq";
+    // 大V发件箱，zset结构：Blog id -> 发布时间
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    // 大V作者id集合
+    public static final String FEED_BIG_ACCOUNT_KEY = "feed:big";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -1,31 +1,59 @@
 package com.hmdp.utils;
 
+import com.hmdp.config.IdProperties;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * 号段模式：每个节点用INCRBY一次申请step个序列号，在本地用AtomicLong无锁发放；
+ * 当前号段用到一定比例时异步申请下一个号段，用完时直接切换；下一个号段还没申请到（如Redis变慢）时，退回每个id自增一次
+ *
  * @Project hm-dianping
  * @Author Kiro
  * @Time 20240113 15:20
  **/
+@Slf4j
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdGenerator {
 
     // 开始时间戳
     private static final long BEGIN_TIMESTAMP = 1640995200L;
     // 序列号的位数
     private static final int COUNT_BITS = 32;
+    // 序列号按天计数
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
 
     private StringRedisTemplate stringRedisTemplate;
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    private final IdProperties idProperties;
+
+    // 业务前缀 -> 号段缓冲
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService segmentLoader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate, IdProperties idProperties) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.idProperties = idProperties;
     }
 
+    @Override
     public long nextId(String keyPrefix) {
         // 生成时间戳
         LocalDateTime now = LocalDateTime.now();
@@ -33,10 +61,108 @@ public class RedisIdWorker {
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         // 生成序列号
         // 获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        String date = now.format(DATE_FORMATTER);
+        String key = "icr:" + keyPrefix + ":" + date;
+        // 号段模式，从本地号段取序列号
+        long count = -1;
+        if (idProperties.getSegmentStep() > 0) {
+            count = buffers.computeIfAbsent(keyPrefix, prefix -> new SegmentBuffer()).next(key);
+        }
+        if (count < 0) {
+            // 未启用号段或号段还没准备好，自增长
+            count = stringRedisTemplate.opsForValue().increment(key);
+        }
         // 拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    @PreDestroy
+    private void shutdown() {
+        segmentLoader.shutdownNow();
+    }
+
+    /**
+     * 一段序列号 [start, end)，只属于申请时的计数key，即只在当天使用
+     */
+    private static class Segment {
+        private final String key;
+        private final long end;
+        private final long prefetchAt;
+        private final AtomicLong cursor;
+
+        Segment(String key, long start, long end, long prefetchAt) {
+            this.key = key;
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 双缓冲：current为正在发放的号段，next为异步申请好的下一个号段
+     */
+    private class SegmentBuffer {
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        /**
+         * @return 序列号，号段还没准备好时返回-1
+         */
+        long next(String key) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.key.equals(key)) {
+                    long count = segment.cursor.getAndIncrement();
+                    if (count < segment.end) {
+                        // 用到预取位置，异步申请下一个号段
+                        if (count == segment.prefetchAt) {
+                            prefetch(key);
+                        }
+                        return count;
+                    }
+                }
+                // 当前号段已用完或已跨天，切换到下一个号段
+                synchronized (this) {
+                    if (current != segment) {
+                        // 其他线程已经切换
+                        continue;
+                    }
+                    Segment prepared = next;
+                    next = null;
+                    if (prepared != null && prepared.key.equals(key)) {
+                        current = prepared;
+                        continue;
+                    }
+                    // 下一个号段还没申请到，本次退回自增长
+                    prefetch(key);
+                    return -1;
+                }
+            }
+        }
+
+        private void prefetch(String key) {
+            if (next != null || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                segmentLoader.execute(() -> {
+                    try {
+                        int step = idProperties.getSegmentStep();
+                        Long end = stringRedisTemplate.opsForValue().increment(key, step);
+                        if (end != null) {
+                            long start = end - step + 1;
+                            next = new Segment(key, start, end + 1, start + (long) (step * idProperties.getPrefetchRatio()));
+                        }
+                    } catch (Exception e) {
+                        log.error("申请id号段失败，key：{}", key, e);
+                    } finally {
+                        loading.set(false);
+                    }
+                });
+            } catch (Exception e) {
+                loading.set(false);
+            }
+        }
+    }
 }
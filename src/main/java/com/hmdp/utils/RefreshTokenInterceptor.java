@@ -1,29 +1,25 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 /**
  * @Author Kiro
  * @Time 20240112 14:48
  **/
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
+
+    SessionCache sessionCache;
 
-    StringRedisTemplate stringRedisTemplate;
+    SignedToken signedToken;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(SessionCache sessionCache, SignedToken signedToken) {
+        this.sessionCache = sessionCache;
+        this.signedToken = signedToken;
     }
 
     @Override
@@ -35,20 +31,15 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        // 基于token从Redis中获取用户信息
-        String tokenKey = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap =  stringRedisTemplate.opsForHash().entries(tokenKey);
+        // 签名token只需本地验签；否则基于token获取用户信息，优先读本地缓存，剩余有效期低于阈值时才续期
+        UserDTO userDTO = SignedToken.isSignedToken(token) ? signedToken.verify(token) : sessionCache.get(token);
         // 判断用户信息是否存在
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             return true;
         }
 
-        // 将查询数据转换成UserDTO并保存到ThreadLocal中
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        // 保存到ThreadLocal中
         UserHolder.saveUser(userDTO);
-
-        // 更新Redis中用户信息的有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
         // 放行
         return true;
     }
@@ -58,4 +49,10 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         // 移除用户
         UserHolder.removeUser();
     }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求（如长轮询）挂起后不会调用afterCompletion，这里移除用户，避免串到该线程处理的下一个请求
+        UserHolder.removeUser();
+    }
 }
@@ -0,0 +1,159 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.OrderStatusDTO;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀订单处理结果：订单消费者写入数据库后把结果存入Redis hash（带有效期），并广播完成的订单id；
+ * 客户端可以长轮询，请求挂起期间不占用Servlet线程，订单处理完成或等待超时后返回
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class SeckillOrderStatus {
+
+    public static final int PENDING = 0;
+    public static final int SUCCESS = 1;
+    public static final int FAILED = 2;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final SeckillProperties seckillProperties;
+
+    // 订单id -> 等待该订单结果的挂起请求
+    private final Map<Long, List<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    public SeckillOrderStatus(StringRedisTemplate stringRedisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.seckillProperties = seckillProperties;
+    }
+
+    @PostConstruct
+    private void init() {
+        // 订阅订单完成广播，消息为逗号分隔的订单id，唤醒本节点上等待这些订单的请求
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            for (String id : body.split(",")) {
+                List<Waiter> list = waiters.remove(Long.valueOf(id));
+                if (list != null) {
+                    list.forEach(waiter -> waiter.result.setResult(toResult(get(Long.valueOf(id), waiter.userId))));
+                }
+            }
+        }, new ChannelTopic(SECKILL_ORDER_DONE_CHANNEL));
+    }
+
+    /**
+     * 写入一批订单的处理结果并广播
+     * @param failures 下单失败的订单id -> 失败原因，不在其中的订单视为下单成功
+     */
+    public void complete(List<VoucherOrder> orders, Map<Long, String> failures) {
+        long ttl = seckillProperties.getOrderStatusTtl().getSeconds();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (VoucherOrder order : orders) {
+                String key = SECKILL_ORDER_STATUS_KEY + order.getId();
+                String failure = failures.get(order.getId());
+                Map<String, String> status = new HashMap<>(4);
+                status.put("userId", order.getUserId().toString());
+                status.put("status", String.valueOf(failure == null ? SUCCESS : FAILED));
+                status.put("message", failure == null ? "" : failure);
+                stringConnection.hMSet(key, status);
+                stringConnection.expire(key, ttl);
+            }
+            stringConnection.publish(SECKILL_ORDER_DONE_CHANNEL, orders.stream()
+                    .map(order -> order.getId().toString())
+                    .collect(Collectors.joining(",")));
+            return null;
+        });
+    }
+
+    /**
+     * 查询订单处理结果，没有结果时视为处理中
+     * @return 订单不属于该用户时返回null
+     */
+    public OrderStatusDTO get(Long orderId, Long userId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(SECKILL_ORDER_STATUS_KEY + orderId);
+        if (entries.isEmpty()) {
+            return new OrderStatusDTO(orderId, PENDING, "");
+        }
+        if (!userId.toString().equals(entries.get("userId"))) {
+            return null;
+        }
+        return new OrderStatusDTO(orderId, Integer.valueOf(entries.get("status").toString()),
+                entries.get("message").toString());
+    }
+
+    /**
+     * 等待订单处理结果：已有结果或不等待时立即返回，否则挂起请求，直到订单处理完成或超时
+     */
+    public DeferredResult<Result> watch(Long orderId, Long userId, long timeoutMillis) {
+        OrderStatusDTO status = get(orderId, userId);
+        if (status == null || status.getStatus() != PENDING || timeoutMillis <= 0) {
+            return resolved(status);
+        }
+        // 超时返回处理中
+        DeferredResult<Result> result = new DeferredResult<>(timeoutMillis, Result.ok(status));
+        Waiter waiter = new Waiter(userId, result);
+        waiters.compute(orderId, (id, list) -> {
+            List<Waiter> l = list == null ? new CopyOnWriteArrayList<>() : list;
+            l.add(waiter);
+            return l;
+        });
+        // 请求结束（完成或超时）后移除
+        result.onCompletion(() -> waiters.computeIfPresent(orderId, (id, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        }));
+        // 注册后再查一次，避免查询和注册之间订单已完成而错过通知
+        status = get(orderId, userId);
+        if (status == null || status.getStatus() != PENDING) {
+            result.setResult(toResult(status));
+        }
+        return result;
+    }
+
+    private static DeferredResult<Result> resolved(OrderStatusDTO status) {
+        DeferredResult<Result> result = new DeferredResult<>();
+        result.setResult(toResult(status));
+        return result;
+    }
+
+    private static Result toResult(OrderStatusDTO status) {
+        return status == null ? Result.fail("订单不存在") : Result.ok(status);
+    }
+
+    private static class Waiter {
+        private final Long userId;
+        private final DeferredResult<Result> result;
+
+        Waiter(Long userId, DeferredResult<Result> result) {
+            this.userId = userId;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_SECKILL_USER_KEY;
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_SECKILL_VOUCHER_KEY;
+
+/**
+ * 秒杀限流拦截器：先经过本节点令牌桶削掉超出本节点处理能力的突发流量，
+ * 再经过Redis全局滑动窗口限制每张券和每个用户的请求速率；被拒绝的请求返回429和Retry-After
+ *
+ * @author Kiro
+ */
+@Slf4j
+public class SeckillRateLimitInterceptor implements HandlerInterceptor {
+
+    private final SlidingWindowRateLimiter rateLimiter;
+
+    private final SeckillProperties.RateLimit rateLimit;
+
+    private final TokenBucket tokenBucket;
+
+    public SeckillRateLimitInterceptor(SlidingWindowRateLimiter rateLimiter, SeckillProperties seckillProperties) {
+        this.rateLimiter = rateLimiter;
+        this.rateLimit = seckillProperties.getRateLimit();
+        this.tokenBucket = new TokenBucket(rateLimit.getLocalRate(), rateLimit.getLocalBurst());
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!rateLimit.isEnabled()) {
+            return true;
+        }
+        // 本节点令牌桶，不访问Redis
+        long wait = tokenBucket.tryAcquire();
+        if (wait > 0) {
+            return reject(response, wait);
+        }
+        // 获取券id和用户，登录拦截器已保证用户存在
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String voucherId = variables == null ? null : variables.get("id");
+        UserDTO user = UserHolder.getUser();
+        if (voucherId == null || user == null) {
+            return true;
+        }
+        // 全局滑动窗口：每张券、每个用户在该券上的请求速率，两个key以券id为hash tag，位于同一个slot
+        String tag = "{" + voucherId + "}";
+        try {
+            wait = rateLimiter.tryAcquire(
+                    Arrays.asList(RATE_LIMIT_SECKILL_VOUCHER_KEY + tag,
+                            RATE_LIMIT_SECKILL_USER_KEY + tag + ":" + user.getId()),
+                    Arrays.asList(rateLimit.getVoucherLimit(), rateLimit.getUserLimit()),
+                    rateLimit.getWindow());
+        } catch (Exception e) {
+            // 限流不可用时放行，由秒杀脚本兜底
+            log.error("全局限流失败", e);
+            return true;
+        }
+        return wait <= 0 || reject(response, wait);
+    }
+
+    private boolean reject(HttpServletResponse response, long waitMillis) throws Exception {
+        // 返回429，Retry-After单位为秒
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, (waitMillis + 999) / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")));
+        return false;
+    }
+}
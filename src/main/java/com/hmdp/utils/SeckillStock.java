@@ -0,0 +1,401 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存：可把一张券的库存拆分到多个分片，分散到不同的Redis节点上。
+ * 分片i的库存key为 seckill:stock:{voucherId:i}，订单key为 seckill:order:cnt:{voucherId:i}，秒杀信息key为 seckill:info:{voucherId:i}，
+ * 待发送订单key为 seckill:pending:{voucherId:i}，四者hash tag相同，位于同一个slot；秒杀时间和每人限购数量在每个分片各存一份，
+ * 下单脚本一次调用即可完成全部校验。订单消息队列按用户分区，与分片不在同一个slot，不能在脚本中发送：
+ * 脚本扣减库存时记录待发送订单，返回后再发送订单消息，订单写入数据库后删除记录；发送前宕机时由补偿任务重新发送，消费者按订单id去重。
+ * 用户按id哈希固定到一个分片，限购数量在该分片内判断；该分片库存不足时从其他分片借调库存到本分片再下单。
+ * 不同分片位于不同的slot，借调分两步：从借出分片取出库存并在该分片记录转移记录，再按转移id幂等地存入借入分片后删除记录；
+ * 两步之间宕机时，由补偿任务按超时未删除的转移记录重新存入，库存不会丢失。
+ * 不分片时沿用原来的 seckill:stock:voucherId，订单key为 seckill:order:cnt:voucherId；
+ * 原来的 seckill:order:voucherId 为set结构的已购买用户集合，下单脚本读取一次后迁移为已购买数量
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class SeckillStock {
+
+    // 秒杀下单脚本，返回0：成功，1：库存不足，2：达到限购数量，3：秒杀尚未开始，4：秒杀已经结束
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    // 从分片中取出库存并记录转移记录的脚本，返回取出的数量
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+    // 把取出的库存存入目标分片的脚本，同一转移id只存入一次
+    private static final DefaultRedisScript<Long> DEPOSIT_SCRIPT;
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("stock_take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+        DEPOSIT_SCRIPT = new DefaultRedisScript<>();
+        DEPOSIT_SCRIPT.setLocation(new ClassPathResource("stock_deposit.lua"));
+        DEPOSIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillProperties seckillProperties;
+
+    // 券id -> 分片数，创建后不再变化
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public SeckillStock(StringRedisTemplate stringRedisTemplate, SeckillProperties seckillProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillProperties = seckillProperties;
+    }
+
+    /**
+     * 按配置的分片数初始化库存，余数分给前几个分片；同时发布秒杀时间和每人限购数量，下单时不再查询数据库
+     */
+    public void init(SeckillVoucher voucher) {
+        Map<String, String> info = new HashMap<>(4);
+        info.put("begin", String.valueOf(toMillis(voucher.getBeginTime())));
+        info.put("end", String.valueOf(toMillis(voucher.getEndTime())));
+        info.put("limit", String.valueOf(voucher.getUserLimit() == null ? 1 : voucher.getUserLimit()));
+        init(voucher.getVoucherId(), voucher.getStock(), seckillProperties.getStockShards(), info);
+    }
+
+    /**
+     * 只初始化库存，不限制秒杀时间，每人限购一单
+     */
+    public void init(Long voucherId, int stock, int shards) {
+        init(voucherId, stock, shards, Collections.emptyMap());
+    }
+
+    private void init(Long voucherId, int stock, int shards, Map<String, String> info) {
+        int n = Math.max(1, shards);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(n));
+            for (int i = 0; i < n; i++) {
+                int shardStock = stock / n + (i < stock % n ? 1 : 0);
+                stringConnection.set(stockKey(voucherId, i, n), String.valueOf(shardStock));
+                if (!info.isEmpty()) {
+                    stringConnection.hMSet(infoKey(voucherId, i, n), info);
+                }
+            }
+            return null;
+        });
+        shardCounts.put(voucherId, n);
+        // 通知各节点清除售罄标记
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":0");
+    }
+
+    /**
+     * 补充库存，平均分到各分片，并通知各节点清除售罄标记
+     */
+    public void replenish(Long voucherId, int amount) {
+        int n = shardCount(voucherId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < n; i++) {
+                int shardAmount = amount / n + (i < amount % n ? 1 : 0);
+                if (shardAmount > 0) {
+                    stringConnection.incrBy(stockKey(voucherId, i, n), shardAmount);
+                }
+            }
+            return null;
+        });
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":0");
+    }
+
+    /**
+     * 校验秒杀时间和限购数量，扣减库存、记录用户已购买数量，并把订单消息发送到订单消息队列
+     * @return 0：成功，1：库存不足，2：达到限购数量，3：秒杀尚未开始，4：秒杀已经结束
+     */
+    public int tryAcquire(Long voucherId, Long userId, long orderId) {
+        int result = reserve(voucherId, userId, orderId);
+        if (result == 0) {
+            sendOrder(voucherId, userId, orderId);
+        }
+        return result;
+    }
+
+    private int reserve(Long voucherId, Long userId, long orderId) {
+        int n = shardCount(voucherId);
+        int home = homeShard(userId, n);
+        int result = acquire(voucherId, userId, orderId, home, n);
+        if (result != 1 || n == 1) {
+            return result;
+        }
+        // 本分片库存不足，依次从其他分片借调库存
+        for (int i = 1; i < n; i++) {
+            // 借到的库存存入本分片后重新下单，多借的库存留在本分片供同分片的其他用户使用
+            if (transfer(voucherId, (home + i) % n, home, n, seckillProperties.getBorrowBatch()) <= 0) {
+                continue;
+            }
+            result = acquire(voucherId, userId, orderId, home, n);
+            if (result != 1) {
+                return result;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 剩余库存：各分片之和
+     */
+    public long remaining(Long voucherId) {
+        long total = 0;
+        for (long stock : shardStocks(voucherId, shardCount(voucherId))) {
+            total += stock;
+        }
+        return total;
+    }
+
+    /**
+     * 均衡各分片的剩余库存：把高于平均值的分片的多余部分逐个转给低于平均值的分片；
+     * 只取出高于平均值的部分，均衡过程中各分片不会被取空
+     */
+    public void rebalance(Long voucherId) {
+        int n = shardCount(voucherId);
+        if (n == 1) {
+            return;
+        }
+        long[] stocks = shardStocks(voucherId, n);
+        long total = Arrays.stream(stocks).sum();
+        long target = total / n;
+        int to = 0;
+        for (int from = 0; from < n; from++) {
+            // 把多余部分依次转给低于平均值的分片
+            while (stocks[from] > target) {
+                while (to < n && stocks[to] >= target) {
+                    to++;
+                }
+                if (to == n) {
+                    break;
+                }
+                long taken = transfer(voucherId, from, to, n, Math.min(stocks[from] - target, target - stocks[to]));
+                if (taken <= 0) {
+                    // 该分片的库存已被下单消耗
+                    break;
+                }
+                stocks[from] -= taken;
+                stocks[to] += taken;
+            }
+        }
+        log.debug("秒杀库存均衡完成，券id：{}，剩余库存：{}，分片数：{}", voucherId, total, n);
+    }
+
+    /**
+     * 补偿借调中断的库存：转移记录超过配置时间仍未删除，说明取出后未完成存入，按记录重新存入目标分片
+     */
+    public void recoverTransfers(Long voucherId) {
+        int n = shardCount(voucherId);
+        if (n == 1) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() - seckillProperties.getTransferRecoverAfter().toMillis();
+        for (int from = 0; from < n; from++) {
+            Map<Object, Object> transfers = stringRedisTemplate.opsForHash().entries(transferKey(voucherId, from));
+            for (Map.Entry<Object, Object> entry : transfers.entrySet()) {
+                // 目标分片:数量:取出时间
+                String[] parts = entry.getValue().toString().split(":");
+                if (Long.parseLong(parts[2]) > deadline) {
+                    continue;
+                }
+                log.warn("补偿秒杀库存借调，券id：{}，分片{} -> 分片{}，数量：{}", voucherId, from, parts[0], parts[1]);
+                deposit(voucherId, from, Integer.parseInt(parts[0]), entry.getKey().toString(), Long.parseLong(parts[1]));
+            }
+        }
+    }
+
+    /**
+     * 订单已写入数据库（或已确定下单失败），删除待发送订单记录
+     */
+    public void completeOrders(Collection<VoucherOrder> orders) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (VoucherOrder order : orders) {
+                int n = shardCount(order.getVoucherId());
+                stringConnection.hDel(pendingKey(order.getVoucherId(), homeShard(order.getUserId(), n), n),
+                        order.getId().toString());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 重新发送超时未写入数据库的订单：待发送订单记录超过配置时间仍未删除，说明订单消息发送失败或尚未处理完，
+     * 重新发送并刷新记录时间；重复的订单消息由消费者按订单id去重
+     */
+    public void resendOrders(Long voucherId) {
+        int n = shardCount(voucherId);
+        long now = System.currentTimeMillis();
+        long deadline = now - seckillProperties.getOrderClaimIdle().toMillis();
+        for (int i = 0; i < n; i++) {
+            String pendingKey = pendingKey(voucherId, i, n);
+            Map<Object, Object> pending = stringRedisTemplate.opsForHash().entries(pendingKey);
+            for (Map.Entry<Object, Object> entry : pending.entrySet()) {
+                // 用户id:记录时间
+                String[] parts = entry.getValue().toString().split(":");
+                if (Long.parseLong(parts[1]) > deadline) {
+                    continue;
+                }
+                String orderId = entry.getKey().toString();
+                log.warn("重新发送秒杀订单消息，券id：{}，订单id：{}", voucherId, orderId);
+                // 先刷新记录时间再发送，消费者处理完重新发送的消息后删除的是刷新后的记录
+                stringRedisTemplate.opsForHash().put(pendingKey, orderId, parts[0] + ":" + now);
+                sendOrder(voucherId, Long.valueOf(parts[0]), Long.parseLong(orderId));
+            }
+        }
+    }
+
+    public int shardCount(Long voucherId) {
+        return shardCounts.computeIfAbsent(voucherId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + id);
+            // 没有分片数的券为分片功能上线前创建的，按不分片处理
+            return value == null ? 1 : Integer.parseInt(value);
+        });
+    }
+
+    private int acquire(Long voucherId, Long userId, long orderId, int shard, int n) {
+        Long result = stringRedisTemplate.execute(
+                SECKILL_SCRIPT,
+                Arrays.asList(stockKey(voucherId, shard, n), orderKey(voucherId, shard, n),
+                        pendingKey(voucherId, shard, n), infoKey(voucherId, shard, n),
+                        legacyOrderKey(voucherId, shard, n)),
+                userId.toString(), voucherId.toString(), String.valueOf(orderId),
+                String.valueOf(System.currentTimeMillis())
+        );
+        return result == null ? 1 : result.intValue();
+    }
+
+    /**
+     * 发送订单消息到用户所在的队列分区 XADD stream.orders:p * k1 v1 k2 v2 ...；
+     * 发送失败时订单仍保留在待发送记录中，由补偿任务重新发送
+     */
+    private void sendOrder(Long voucherId, Long userId, long orderId) {
+        int partitions = seckillProperties.getOrderPartitions();
+        Map<String, String> message = new HashMap<>(4);
+        message.put("userId", userId.toString());
+        message.put("voucherId", voucherId.toString());
+        message.put("id", String.valueOf(orderId));
+        try {
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                    .in(orderStreamKey(orderPartition(userId, partitions), partitions))
+                    .ofMap(message));
+        } catch (Exception e) {
+            log.error("发送秒杀订单消息失败，等待补偿任务重新发送，订单id：{}", orderId, e);
+        }
+    }
+
+    /**
+     * 从分片from取出最多limit个库存转给分片to
+     * @return 实际转移的数量
+     */
+    private long transfer(Long voucherId, int from, int to, int n, long limit) {
+        String transferId = UUID.randomUUID().toString(true);
+        Long taken = stringRedisTemplate.execute(
+                TAKE_SCRIPT,
+                Arrays.asList(stockKey(voucherId, from, n), transferKey(voucherId, from)),
+                String.valueOf(limit), transferId, String.valueOf(to), String.valueOf(System.currentTimeMillis())
+        );
+        if (taken == null || taken <= 0) {
+            return 0;
+        }
+        deposit(voucherId, from, to, transferId, taken);
+        return taken;
+    }
+
+    private void deposit(Long voucherId, int from, int to, String transferId, long amount) {
+        int n = shardCount(voucherId);
+        stringRedisTemplate.execute(
+                DEPOSIT_SCRIPT,
+                Arrays.asList(stockKey(voucherId, to, n), depositedKey(voucherId, to)),
+                transferId, String.valueOf(amount), String.valueOf(TimeUnit.HOURS.toMillis(SECKILL_DEPOSITED_TTL))
+        );
+        // 存入后删除转移记录，删除前宕机时补偿任务会重新存入，由转移id去重
+        stringRedisTemplate.opsForHash().delete(transferKey(voucherId, from), transferId);
+    }
+
+    private long[] shardStocks(Long voucherId, int n) {
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (int i = 0; i < n; i++) {
+                stringConnection.get(stockKey(voucherId, i, n));
+            }
+            return null;
+        });
+        long[] stocks = new long[n];
+        for (int i = 0; i < n; i++) {
+            Object value = values.get(i);
+            stocks[i] = value == null ? 0 : Long.parseLong(value.toString());
+        }
+        return stocks;
+    }
+
+    private static int homeShard(Long userId, int n) {
+        return n == 1 ? 0 : Math.floorMod(MurmurHash.hash32(userId.toString()), n);
+    }
+
+    public static String stockKey(Long voucherId, int shard, int n) {
+        return n == 1 ? SECKILL_STOCK_KEY + voucherId : SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 用户订单消息所在的队列分区，同一用户的订单总是进入同一个分区，由同一个消费者按顺序处理
+     */
+    public static int orderPartition(Long userId, int partitions) {
+        return Math.floorMod(MurmurHash.hash32(userId.toString()), partitions);
+    }
+
+    public static String orderStreamKey(int partition, int partitions) {
+        return partitions <= 1 ? SECKILL_ORDER_STREAM : SECKILL_ORDER_STREAM + ":" + partition;
+    }
+
+    public static String orderKey(Long voucherId, int shard, int n) {
+        return n == 1 ? SECKILL_ORDER_COUNT_KEY + voucherId
+                : SECKILL_ORDER_COUNT_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String legacyOrderKey(Long voucherId, int shard, int n) {
+        return n == 1 ? SECKILL_ORDER_KEY + voucherId : SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String transferKey(Long voucherId, int shard) {
+        return SECKILL_TRANSFER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String depositedKey(Long voucherId, int shard) {
+        return SECKILL_DEPOSITED_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String pendingKey(Long voucherId, int shard, int n) {
+        return n == 1 ? SECKILL_PENDING_KEY + voucherId : SECKILL_PENDING_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String infoKey(Long voucherId, int shard, int n) {
+        return n == 1 ? SECKILL_INFO_KEY + voucherId : SECKILL_INFO_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.SessionProperties;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 登录会话的本地缓存：按token缓存用户信息，缓存期内的请求不访问Redis；
+ * 会话有效期只在剩余时间低于阈值时才续期，登出时删除Redis中的会话并广播各节点清除本地缓存
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class SessionCache {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final SessionProperties sessionProperties;
+
+    private final Cache<String, Session> localCache;
+
+    public SessionCache(StringRedisTemplate stringRedisTemplate,
+                        RedisMessageListenerContainer listenerContainer,
+                        SessionProperties sessionProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.sessionProperties = sessionProperties;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(sessionProperties.getLocalMaxSize())
+                .expireAfterWrite(sessionProperties.getLocalTtl().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @PostConstruct
+    private void init() {
+        // 订阅登出广播，清除本节点缓存的会话
+        listenerContainer.addMessageListener((message, pattern) ->
+                localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_LOGOUT_CHANNEL));
+    }
+
+    /**
+     * 获取token对应的用户，必要时续期
+     * @return 会话不存在或已过期时返回null
+     */
+    public UserDTO get(String token) {
+        Session session = localCache.getIfPresent(token);
+        if (session == null) {
+            session = load(token);
+            if (session == null) {
+                return null;
+            }
+            localCache.put(token, session);
+        }
+        refreshIfNeeded(token, session);
+        return session.user;
+    }
+
+    /**
+     * 登出：删除Redis中的会话，并广播各节点清除本地缓存
+     */
+    public void invalidate(String token) {
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        localCache.invalidate(token);
+        stringRedisTemplate.convertAndSend(LOGIN_LOGOUT_CHANNEL, token);
+    }
+
+    private Session load(String token) {
+        // 一次往返同时获取用户信息和剩余有效期
+        String tokenKey = LOGIN_USER_KEY + token;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.hGetAll(tokenKey);
+            stringConnection.pTtl(tokenKey);
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> userMap = (Map<Object, Object>) results.get(0);
+        if (userMap == null || userMap.isEmpty()) {
+            return null;
+        }
+        Long ttl = (Long) results.get(1);
+        UserDTO user = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+        long expireAt = ttl == null || ttl < 0 ? 0 : System.currentTimeMillis() + ttl;
+        return new Session(user, expireAt);
+    }
+
+    private void refreshIfNeeded(String token, Session session) {
+        long now = System.currentTimeMillis();
+        long fullTtl = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        // 剩余有效期还高于阈值，不续期
+        if (session.expireAt - now > fullTtl - sessionProperties.getRefreshAfter().toMillis()) {
+            return;
+        }
+        synchronized (session) {
+            if (session.expireAt - now > fullTtl - sessionProperties.getRefreshAfter().toMillis()) {
+                return;
+            }
+            session.expireAt = now + fullTtl;
+        }
+        // 更新Redis中用户信息的有效期
+        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.MINUTES);
+    }
+
+    private static class Session {
+        private final UserDTO user;
+        // 估计的Redis会话过期时间
+        private volatile long expireAt;
+
+        Session(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SessionProperties;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 无状态签名token：token = base64url(载荷).base64url(HMAC-SHA256签名)，载荷包含token id、用户信息和过期时间；
+ * 校验只需本地计算签名，不访问Redis。登出的token id记入Redis有序集合（分数为过期时间），
+ * 各节点启动时加载、之后通过广播增量更新到本地，过期后清除
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Component
+public class SignedToken {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // HMAC-SHA256密钥的最小长度（字节）
+    private static final int MIN_SECRET_BYTES = 32;
+    // 早期版本配置文件中的默认密钥，已公开，不能使用
+    private static final String PLACEHOLDER_SECRET = "hmdp-session-secret-change-me";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    // 未配置密钥时为null，不签发也不接受签名token
+    private final SecretKeySpec key;
+
+    // Mac不是线程安全的，每个线程一个
+    private final ThreadLocal<Mac> macs;
+
+    // 已登出的token id -> 过期时间
+    private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "signed-token-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SignedToken(StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer,
+                       SessionProperties sessionProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.key = createKey(sessionProperties);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 校验密钥：signed模式必须配置；已配置的密钥不论哪种模式都要足够安全，否则可以伪造token
+     */
+    private static SecretKeySpec createKey(SessionProperties sessionProperties) {
+        String secret = sessionProperties.getSecret();
+        if (secret == null || secret.isEmpty()) {
+            if ("signed".equals(sessionProperties.getMode())) {
+                throw new IllegalStateException("hmdp.session.mode为signed时必须配置hmdp.session.secret");
+            }
+            return null;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (PLACEHOLDER_SECRET.equals(secret) || bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("hmdp.session.secret不能使用默认值，且至少" + MIN_SECRET_BYTES + "字节");
+        }
+        return new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    @PostConstruct
+    private void init() {
+        // 先订阅再加载，避免加载期间登出的token被遗漏；消息格式：token id:过期时间
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            revoked.put(Long.valueOf(parts[0]), Long.valueOf(parts[1]));
+        }, new ChannelTopic(LOGIN_REVOKE_CHANNEL));
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(LOGIN_REVOKED_KEY, System.currentTimeMillis(), Double.MAX_VALUE);
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                revoked.put(Long.valueOf(tuple.getValue()), tuple.getScore().longValue());
+            }
+        }
+        // 定期清除已过期的登出记录，过期的token本身已无法通过校验
+        cleaner.scheduleWithFixedDelay(this::cleanUp, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 签发token
+     */
+    public String issue(UserDTO user) {
+        if (key == null) {
+            throw new IllegalStateException("未配置hmdp.session.secret，不能签发签名token");
+        }
+        long expireAt = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(ThreadLocalRandom.current().nextLong());
+            out.writeLong(user.getId());
+            out.writeLong(expireAt);
+            out.writeUTF(user.getNickName() == null ? "" : user.getNickName());
+            out.writeUTF(user.getIcon() == null ? "" : user.getIcon());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        String payload = ENCODER.encodeToString(bytes.toByteArray());
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * 校验token
+     * @return 签名不正确、已过期或已登出时返回null
+     */
+    public UserDTO verify(String token) {
+        Claims claims = parse(token);
+        if (claims == null || claims.expireAt <= System.currentTimeMillis() || revoked.containsKey(claims.tokenId)) {
+            return null;
+        }
+        return claims.user;
+    }
+
+    /**
+     * 登出：记录token id直到token过期，并广播各节点
+     */
+    public void revoke(String token) {
+        Claims claims = parse(token);
+        if (claims == null) {
+            return;
+        }
+        revoked.put(claims.tokenId, claims.expireAt);
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, String.valueOf(claims.tokenId), claims.expireAt);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKE_CHANNEL, claims.tokenId + ":" + claims.expireAt);
+    }
+
+    public static boolean isSignedToken(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    private Claims parse(String token) {
+        int dot = token.indexOf('.');
+        if (key == null || dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            // 常量时间比较签名
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(payload)));
+            Claims claims = new Claims();
+            claims.tokenId = in.readLong();
+            UserDTO user = new UserDTO();
+            user.setId(in.readLong());
+            claims.expireAt = in.readLong();
+            String nickName = in.readUTF();
+            String icon = in.readUTF();
+            user.setNickName(nickName.isEmpty() ? null : nickName);
+            user.setIcon(icon.isEmpty() ? null : icon);
+            claims.user = user;
+            return claims;
+        } catch (IllegalArgumentException | IOException e) {
+            // 格式不正确
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void cleanUp() {
+        try {
+            long now = System.currentTimeMillis();
+            revoked.values().removeIf(expireAt -> expireAt <= now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, now);
+        } catch (Exception e) {
+            log.error("清除过期的登出记录失败", e);
+        }
+    }
+
+    private static class Claims {
+        private long tokenId;
+        private long expireAt;
+        private UserDTO user;
+    }
+}
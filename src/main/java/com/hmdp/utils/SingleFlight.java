@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 进程内请求合并：同一个key同一时刻只有一个线程执行加载，其余线程共享同一个CompletableFuture等待结果，
+ * 加载完成即被唤醒，无需休眠轮询；等待超过上限时自行执行加载，避免加载线程卡住时等待的线程一直挂起
+ *
+ * @author Kiro
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    // 等待其他线程加载结果的最长时间
+    private final long waitMillis;
+
+    public SingleFlight(long waitMillis) {
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * 同步执行：第一个到达的线程执行loader，其余线程等待其结果
+     * @param key 合并的key
+     * @param loader 加载逻辑
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R execute(String key, Supplier<R> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, future);
+        if (existing != null) {
+            // 已有线程在加载，等待其结果
+            try {
+                return (R) existing.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 等待超时，自行加载
+                return loader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待加载结果时被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+        Object result = null;
+        Throwable failure = null;
+        try {
+            R r = loader.get();
+            result = r;
+            return r;
+        } catch (Throwable e) {
+            // 包括Error和未声明的受检异常，都要通知等待的线程
+            failure = e;
+            throw e;
+        } finally {
+            calls.remove(key, future);
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
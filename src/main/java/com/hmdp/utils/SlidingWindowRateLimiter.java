@@ -0,0 +1,58 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于Redis的全局滑动窗口限流，各节点共享计数；多条规则在一次脚本调用中同时校验，全部未超限才计数放行
+ *
+ * @author Kiro
+ */
+@Component
+public class SlidingWindowRateLimiter {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public SlidingWindowRateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * @param keys 每条规则的计数key前缀，所有规则在一个脚本中校验，须带有相同的hash tag以位于同一个slot
+     * @param limits 每条规则在一个窗口内允许的请求数
+     * @param window 窗口长度
+     * @return 0表示放行，否则为建议等待的毫秒数
+     */
+    public long tryAcquire(List<String> keys, List<Integer> limits, Duration window) {
+        long windowMillis = window.toMillis();
+        long now = System.currentTimeMillis();
+        long index = now / windowMillis;
+        // 每条规则传入当前窗口和上一窗口的计数key
+        List<String> windowKeys = new ArrayList<>(keys.size() * 2);
+        for (String key : keys) {
+            windowKeys.add(key + ":" + index);
+            windowKeys.add(key + ":" + (index - 1));
+        }
+        Object[] args = new Object[limits.size() + 2];
+        args[0] = String.valueOf(windowMillis);
+        args[1] = String.valueOf(now % windowMillis);
+        for (int i = 0; i < limits.size(); i++) {
+            args[i + 2] = String.valueOf(limits.get(i));
+        }
+        Long wait = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, windowKeys, args);
+        return wait == null ? 0 : wait;
+    }
+}
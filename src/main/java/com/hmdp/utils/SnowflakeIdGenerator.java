@@ -0,0 +1,226 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.config.IdProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TIME_KEY;
+
+/**
+ * Snowflake风格的id生成器，id在本地生成，不需要每次访问Redis：
+ * 1位符号位 + 1位固定为1 + 40位毫秒时间戳 + 10位worker id + 12位序列号。
+ * 固定为1的一位使id大于2^62，与RedisIdWorker生成的id区间不重叠，切换生成方式后不会与已有订单冲突。
+ * worker id启动时从Redis租用并定期续期，续期时记录当前时间戳，重新租到该worker id的节点从该时间戳加一个租约时长之后继续；
+ * 时钟回拨时沿用上一次的时间戳继续分配序列号，保证id单调递增不重复。
+ * <p>
+ * 接手的节点无法得知上一个使用者在最后一次续期后实际用到了哪个时间戳，只能假设用满了整个租约，
+ * 因此接手后生成的id中的时间戳比实际时间超前最多一个租约时长（默认30秒），id仍然唯一、递增，但不能用于推算精确的创建时间。
+ * <p>
+ * 租约在本地过期后（Redis不可用超过租约时长）停止生成id，无法区分Redis整体不可用还是只有本节点与Redis断开，
+ * 继续生成可能与接手该worker id的节点重复。Redis恢复后，若期间没有其他节点租用过该worker id（其他节点租用时会先更新时间戳），
+ * 续期时直接重新租用，沿用原来的时间戳继续生成，否则重新租用其他worker id
+ *
+ * @author Kiro
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(prefix = "hmdp.id", name = "generator", havingValue = "snowflake")
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    // 开始时间戳（毫秒），与RedisIdWorker一致
+    private static final long BEGIN_TIMESTAMP = 1640995200000L;
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long FLAG = 1L << 62;
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final IdProperties.Snowflake config;
+
+    // 本节点标识，作为租约的值
+    private final String owner = UUID.randomUUID().toString(true);
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "id-worker-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long workerId = -1;
+    // 租约在本地的有效期，超过后停止生成，避免与接手该worker id的节点重复
+    private long leaseValidUntil;
+    // 本节点最后一次写入Redis的时间戳，用于判断租约过期期间是否有其他节点租用过
+    private long recordedTimestamp;
+    private long lastTimestamp;
+    private long sequence;
+
+    public SnowflakeIdGenerator(StringRedisTemplate stringRedisTemplate, IdProperties idProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = idProperties.getSnowflake();
+    }
+
+    @PostConstruct
+    public void init() {
+        lease();
+        long interval = config.getHeartbeat().toMillis();
+        heartbeat.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        synchronized (this) {
+            if (workerId >= 0) {
+                // 释放前记录时间戳，再释放租约
+                stringRedisTemplate.opsForValue().set(ID_WORKER_TIME_KEY + workerId, String.valueOf(currentTimestamp()));
+                stringRedisTemplate.execute(RELEASE_SCRIPT,
+                        Collections.singletonList(ID_WORKER_KEY + workerId), owner);
+            }
+        }
+    }
+
+    @Override
+    public synchronized long nextId(String keyPrefix) {
+        long now = System.currentTimeMillis();
+        if (workerId < 0 || now >= leaseValidUntil) {
+            throw new IllegalStateException("worker id租约已失效（Redis不可用超过租约时长），暂停生成id直到续期成功");
+        }
+        long timestamp = now - BEGIN_TIMESTAMP;
+        if (timestamp < lastTimestamp) {
+            // 时钟回拨，沿用上一次的时间戳
+            if (lastTimestamp - timestamp > 1000) {
+                log.warn("时钟回拨{}ms，沿用上一次的时间戳生成id", lastTimestamp - timestamp);
+            }
+            timestamp = lastTimestamp;
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                // 本毫秒序列号用完，借用下一毫秒
+                timestamp = lastTimestamp + 1;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return FLAG | timestamp << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+    }
+
+    /**
+     * 当前时间戳，时钟回拨时为已使用的最大时间戳
+     */
+    private synchronized long currentTimestamp() {
+        return Math.max(lastTimestamp, System.currentTimeMillis() - BEGIN_TIMESTAMP);
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用worker id
+     */
+    private synchronized void lease() {
+        int start = ThreadLocalRandom.current().nextInt((int) MAX_WORKER_ID + 1);
+        long ttl = config.getLeaseTtl().toMillis();
+        for (int i = 0; i <= MAX_WORKER_ID; i++) {
+            long id = (start + i) & MAX_WORKER_ID;
+            long requestTime = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, owner, ttl, TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                // 上一个使用者在最后一次续期后最多还能生成一个租约时长的id，从记录的时间戳加租约时长开始，
+                // 即使本机时钟比上一个使用者慢也不会重复
+                String last = stringRedisTemplate.opsForValue().get(ID_WORKER_TIME_KEY + id);
+                if (last != null) {
+                    lastTimestamp = Math.max(lastTimestamp, Long.parseLong(last) + ttl);
+                    sequence = MAX_SEQUENCE;
+                }
+                // 生成id前先更新时间戳，原使用者据此判断该worker id已被其他节点租用过
+                recordedTimestamp = currentTimestamp();
+                stringRedisTemplate.opsForValue().set(ID_WORKER_TIME_KEY + id, String.valueOf(recordedTimestamp));
+                workerId = id;
+                leaseValidUntil = requestTime + ttl;
+                log.info("租用worker id：{}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的worker id");
+    }
+
+    private void renew() {
+        try {
+            long requestTime = System.currentTimeMillis();
+            long id;
+            long last;
+            long recorded;
+            synchronized (this) {
+                id = workerId;
+                last = currentTimestamp();
+                recorded = recordedTimestamp;
+            }
+            if (id < 0) {
+                // 上次重新租用失败，再次尝试
+                lease();
+                return;
+            }
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Arrays.asList(ID_WORKER_KEY + id, ID_WORKER_TIME_KEY + id),
+                    owner, String.valueOf(config.getLeaseTtl().toMillis()), String.valueOf(last),
+                    String.valueOf(recorded));
+            if (renewed != null && renewed == 1) {
+                synchronized (this) {
+                    if (requestTime >= leaseValidUntil) {
+                        log.info("worker id {}的租约已恢复，继续生成id", id);
+                    }
+                    leaseValidUntil = requestTime + config.getLeaseTtl().toMillis();
+                    recordedTimestamp = last;
+                }
+                return;
+            }
+            // 租约已过期并被其他节点获取，重新租用
+            log.warn("worker id {}的租约已丢失，重新租用", id);
+            synchronized (this) {
+                workerId = -1;
+            }
+            lease();
+        } catch (Exception e) {
+            // Redis暂时不可用，租约有效期内继续生成，下次心跳重试
+            long remaining;
+            synchronized (this) {
+                remaining = leaseValidUntil - System.currentTimeMillis();
+            }
+            if (remaining > 0) {
+                log.error("worker id续期失败，租约剩余{}ms", remaining, e);
+            } else {
+                log.error("worker id续期失败，租约已过期，暂停生成id直到Redis恢复", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+/**
+ * 本地令牌桶：以固定速率生成令牌，桶满后不再增加，允许不超过桶容量的突发流量
+ *
+ * @author Kiro
+ */
+public class TokenBucket {
+
+    // 每毫秒生成的令牌数
+    private final double ratePerMillis;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long lastRefillTime;
+
+    /**
+     * @param ratePerSecond 每秒生成的令牌数
+     * @param capacity 桶容量，即允许的最大突发请求数
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerMillis = ratePerSecond / 1000;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @return 0表示取到令牌，否则为预计还需等待的毫秒数
+     */
+    public synchronized long tryAcquire() {
+        long now = System.currentTimeMillis();
+        // 按距上次补充的时间补充令牌
+        tokens = Math.min(capacity, tokens + (now - lastRefillTime) * ratePerMillis);
+        lastRefillTime = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / ratePerMillis);
+    }
+}
@@ -0,0 +1,17 @@
+-- 点赞/取消点赞；点赞数即点赞集合的大小，由后台任务定期写回数据库
+-- 点赞集合key，zset结构：用户id -> 点赞时间
+local likedKey = KEYS[1]
+-- 用户id
+local userId = ARGV[1]
+-- 当前时间（毫秒）
+local now = ARGV[2]
+
+-- 判断是否点赞过
+if (redis.call('zscore', likedKey, userId)) then
+    -- 已点赞，取消点赞，返回0
+    redis.call('zrem', likedKey, userId)
+    return 0
+end
+-- 未点赞，点赞，返回1
+redis.call('zadd', likedKey, now, userId)
+return 1
@@ -0,0 +1,14 @@
+-- 取出点赞数待写回数据库的Blog id
+-- 待写回key，set结构：Blog id
+local dirtyKey = KEYS[1]
+-- 写回中key，与待写回key带有相同的hash tag
+local flushingKey = KEYS[2]
+
+-- 上次写回未完成（写回失败或节点宕机）时先重试上次的Blog，否则把待写回改名为写回中，之后的点赞计入新的待写回
+if (redis.call('exists', flushingKey) == 0) then
+    if (redis.call('exists', dirtyKey) == 0) then
+        return {}
+    end
+    redis.call('rename', dirtyKey, flushingKey)
+end
+return redis.call('smembers', flushingKey)
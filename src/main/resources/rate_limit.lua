@@ -0,0 +1,23 @@
+-- 滑动窗口限流：用当前窗口的计数加上一窗口按剩余比例折算的计数，近似最近一个窗口内的请求数
+-- KEYS：每条规则两个key，依次为当前窗口和上一窗口的计数key
+-- ARGV[1]：窗口长度（毫秒），ARGV[2]：当前时间在窗口内已过去的毫秒数，ARGV[3..]：每条规则的限制次数
+local window = tonumber(ARGV[1])
+local elapsed = tonumber(ARGV[2])
+local ratio = (window - elapsed) / window
+
+-- 所有规则都未超限才放行
+for i = 3, #ARGV do
+    local current = tonumber(redis.call('get', KEYS[(i - 3) * 2 + 1]) or 0)
+    local previous = tonumber(redis.call('get', KEYS[(i - 3) * 2 + 2]) or 0)
+    if (current + previous * ratio >= tonumber(ARGV[i])) then
+        -- 超限，返回到下一个窗口开始还需等待的毫秒数
+        return window - elapsed
+    end
+end
+-- 放行，各规则当前窗口计数加一，保留两个窗口供下一窗口折算
+for i = 3, #ARGV do
+    local key = KEYS[(i - 3) * 2 + 1]
+    redis.call('incr', key)
+    redis.call('pexpire', key, window * 2)
+end
+return 0
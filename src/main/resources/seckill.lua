@@ -1,28 +1,74 @@
 -- 参数列表
--- 优惠券id
-local voucherId = ARGV[1]
 -- 用户id
-local userId = ARGV[2]
+local userId = ARGV[1]
+-- 优惠券id
+local voucherId = ARGV[2]
+-- 订单id
+local orderId = ARGV[3]
+-- 当前时间（毫秒）
+local now = ARGV[4]
 
--- 数据key
+-- 数据key，由调用方传入；分片模式下为用户所在分片的库存、订单、待发送订单和秒杀信息，四个key的hash tag相同，位于同一个slot
 -- 库存key
-local stockKey = 'seckill:stock:' .. voucherId
--- 订单key
-local orderKey = 'seckill:order:' .. voucherId
+local stockKey = KEYS[1]
+-- 订单key，hash结构：用户id -> 已购买数量
+local orderKey = KEYS[2]
+-- 待发送订单key，hash结构：订单id -> 用户id:记录时间（毫秒）
+local pendingKey = KEYS[3]
+-- 秒杀信息key，hash结构：begin、end为秒杀开始、结束时间（毫秒），limit为每人限购数量
+local infoKey = KEYS[4]
+-- 原来的订单key，set结构：已购买的用户id；曾短暂以hash结构保存已购买数量
+local legacyOrderKey = KEYS[5]
 
 -- 脚本业务
+local info = redis.call('hmget', infoKey, 'begin', 'end', 'limit')
+-- 没有秒杀信息的券为该功能上线前创建的，不校验时间，每人限购一单
+if (info[1]) then
+    -- 以Redis服务器时间为准，避免各节点时钟不一致
+    local time = redis.call('time')
+    local serverNow = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    -- 判断秒杀是否开始
+    if (serverNow < tonumber(info[1])) then
+        -- 尚未开始，返回3
+        return 3
+    end
+    -- 判断秒杀是否结束
+    if (serverNow > tonumber(info[2])) then
+        -- 已经结束，返回4
+        return 4
+    end
+end
+-- 判断用户是否达到限购数量
+local limit = tonumber(info[3]) or 1
+local bought = tonumber(redis.call('hget', orderKey, userId))
+if (not bought) then
+    -- 迁移原来订单key中的购买记录
+    local legacyType = redis.call('type', legacyOrderKey)['ok']
+    if (legacyType == 'set') then
+        bought = redis.call('sismember', legacyOrderKey, userId)
+    elseif (legacyType == 'hash') then
+        bought = tonumber(redis.call('hget', legacyOrderKey, userId)) or 0
+    else
+        bought = 0
+    end
+    if (bought > 0) then
+        redis.call('hset', orderKey, userId, bought)
+    end
+end
+if (bought >= limit) then
+    -- 达到限购数量，返回2
+    return 2
+end
 -- 判断库存是否充足
-if (tonumber(redis.call('get', stockKey)) <= 0) then
+if ((tonumber(redis.call('get', stockKey)) or 0) <= 0) then
     -- 库存不足，返回1
     return 1
 end
--- 判断用户是否下单
-if (redis.call('sismember', orderKey, userId) == 1) then
-    -- 用户已下单，重复下单，返回2
-    return 2
-end
 -- 扣库存
 redis.call('incrby', stockKey, -1)
--- 下单（保存用户）
-redis.call('sadd', orderKey, userId)
-return 0
\ No newline at end of file
+-- 下单（记录用户已购买数量）
+redis.call('hincrby', orderKey, userId, 1)
+-- 记录待发送订单，与扣库存原子执行；订单消息队列按用户分区，与分片不在同一个slot，由调用方在脚本返回后发送，
+-- 订单写入数据库后删除记录，发送失败时由补偿任务按超时未删除的记录重新发送
+redis.call('hset', pendingKey, orderId, userId .. ':' .. now)
+return 0
@@ -0,0 +1,18 @@
+-- 把从其他分片取出的库存存入本分片，同一转移id只存入一次，返回1：存入，0：已存入过
+-- 库存key
+local stockKey = KEYS[1]
+-- 已存入的转移id集合key，与库存key的hash tag相同
+local depositedKey = KEYS[2]
+-- 转移id
+local transferId = ARGV[1]
+-- 数量
+local amount = tonumber(ARGV[2])
+-- 转移id集合的有效期（毫秒）
+local ttl = ARGV[3]
+
+if (redis.call('sadd', depositedKey, transferId) == 0) then
+    return 0
+end
+redis.call('pexpire', depositedKey, ttl)
+redis.call('incrby', stockKey, amount)
+return 1
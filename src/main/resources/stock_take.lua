@@ -0,0 +1,23 @@
+-- 从库存分片中取出最多ARGV[1]个库存转给另一个分片，返回实际取出的数量
+-- 取出的同时在本分片记录转移记录，存入目标分片后删除；存入前宕机时由补偿任务按记录重新存入，库存不会丢失
+-- 库存key
+local stockKey = KEYS[1]
+-- 转移记录key，与库存key的hash tag相同，hash结构：转移id -> 目标分片:数量:取出时间（毫秒）
+local transferKey = KEYS[2]
+-- 最多取出的数量
+local limit = tonumber(ARGV[1])
+-- 转移id
+local transferId = ARGV[2]
+-- 目标分片
+local target = ARGV[3]
+-- 取出时间
+local now = ARGV[4]
+
+local stock = tonumber(redis.call('get', stockKey)) or 0
+local n = math.min(stock, limit)
+if (n <= 0) then
+    return 0
+end
+redis.call('incrby', stockKey, -n)
+redis.call('hset', transferKey, transferId, target .. ':' .. n .. ':' .. now)
+return n
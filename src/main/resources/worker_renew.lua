@@ -0,0 +1,17 @@
+-- 续期worker id租约，并记录该worker id最后使用的时间戳，下次申请到该worker id的节点从这个时间戳之后继续生成
+-- KEYS[1]：租约key，KEYS[2]：时间戳key；ARGV[1]：节点标识，ARGV[2]：租约时长（毫秒），ARGV[3]：最后使用的时间戳，
+-- ARGV[4]：本节点上一次记录的时间戳
+local holder = redis.call('get', KEYS[1])
+if (holder == ARGV[1]) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    redis.call('set', KEYS[2], ARGV[3])
+    return 1
+end
+-- 租约已过期（如Redis不可用超过租约时长），其他节点租用时会先更新时间戳，时间戳未变说明期间没有其他节点使用过，重新租用
+if ((not holder) and redis.call('get', KEYS[2]) == ARGV[4]) then
+    redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2])
+    redis.call('set', KEYS[2], ARGV[3])
+    return 1
+end
+-- 租约已被其他节点获取
+return 0
@@ -0,0 +1,107 @@
+package com.hmdp.util;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓存序列化测试，对比JSON与二进制格式的大小和编解码耗时
+ *
+ * @Project hm-dianping
+ * @Author Kiro
+ **/
+public class CacheCodecTest {
+
+    private static final int ROUNDS = 100000;
+
+    private final CacheCodec jsonCodec = new JsonCacheCodec();
+    private final CacheCodec binaryCodec = new BinaryCacheCodec();
+
+    @Test
+    void testRoundTrip() {
+        long expireMillis = System.currentTimeMillis() + 60000;
+
+        Shop shop = shop();
+        byte[] bytes = binaryCodec.encode(shop, expireMillis);
+        assertEquals(shop, binaryCodec.decode(bytes, Shop.class));
+        assertEquals(expireMillis, binaryCodec.expireMillis(bytes));
+
+        Blog blog = new Blog().setId(5L).setShopId(1L).setUserId(2L).setTitle("探店").setContent("好吃")
+                .setImages("/imgs/blogs/1.jpg").setLiked(10).setComments(3).setCreateTime(LocalDateTime.now());
+        assertEquals(blog, binaryCodec.decode(binaryCodec.encode(blog, expireMillis), Blog.class));
+        // 与请求相关的字段不缓存
+        Blog liked = BeanUtil.copyProperties(blog, Blog.class).setIsLike(true).setName("小鱼同学");
+        assertEquals(blog, binaryCodec.decode(binaryCodec.encode(liked, expireMillis), Blog.class));
+        assertNull(binaryCodec.decode(binaryCodec.encode(shop.setDistance(100.0), expireMillis), Shop.class).getDistance());
+
+        UserDTO user = new UserDTO();
+        user.setId(2L);
+        user.setNickName("小鱼同学");
+        assertEquals(user, binaryCodec.decode(binaryCodec.encode(user, 0), UserDTO.class));
+
+        ShopType shopType = new ShopType().setId(1L).setName("美食").setIcon("/types/ms.png").setSort(1);
+        assertEquals(shopType, binaryCodec.decode(binaryCodec.encode(shopType, 0), ShopType.class));
+
+        // 空值只有头部
+        assertNull(binaryCodec.decode(binaryCodec.encode(null, expireMillis), Shop.class));
+        // 兼容旧的JSON缓存
+        byte[] json = jsonCodec.encode(shop, expireMillis);
+        assertEquals(shop.getName(), binaryCodec.decode(json, Shop.class).getName());
+        assertEquals(expireMillis, binaryCodec.expireMillis(json));
+
+        // 损坏的类型标识
+        byte[] corrupt = binaryCodec.encode(shop, expireMillis);
+        corrupt[9] = (byte) 0x80;
+        assertThrows(IllegalStateException.class, () -> binaryCodec.decode(corrupt, Shop.class));
+    }
+
+    @Test
+    void testCodecCost() {
+        Shop shop = shop();
+        long expireMillis = System.currentTimeMillis() + 60000;
+        for (CacheCodec codec : new CacheCodec[]{jsonCodec, binaryCodec, jsonCodec, binaryCodec}) {
+            String name = codec.getClass().getSimpleName();
+            byte[] bytes = codec.encode(shop, expireMillis);
+
+            long begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                codec.encode(shop, expireMillis);
+            }
+            long encode = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                codec.decode(bytes, Shop.class);
+            }
+            long decode = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                codec.expireMillis(bytes);
+            }
+            long expire = System.nanoTime() - begin;
+
+            System.out.println(name + " 大小：" + bytes.length + "字节，序列化：" + encode / ROUNDS + "ns，反序列化："
+                    + decode / ROUNDS + "ns，读取过期时间：" + expire / ROUNDS + "ns");
+        }
+    }
+
+    private Shop shop() {
+        return new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号").setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+    }
+}
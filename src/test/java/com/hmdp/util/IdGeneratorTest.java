@@ -0,0 +1,76 @@
+package com.hmdp.util;
+
+import com.hmdp.config.IdProperties;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * id生成器压测：相同的并发和请求数下，对比RedisIdWorker和SnowflakeIdGenerator的吞吐量，并校验id不重复
+ *
+ * @Project hm-dianping
+ * @Author Kiro
+ **/
+@SpringBootTest
+public class IdGeneratorTest {
+
+    private static final int THREADS = 300;
+    private static final int IDS_PER_THREAD = 1000;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IdProperties idProperties;
+
+    private ExecutorService es = Executors.newFixedThreadPool(THREADS);
+
+    @Test
+    void testThroughput() throws InterruptedException {
+        benchmark("RedisIdWorker", redisIdWorker);
+
+        SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(stringRedisTemplate, idProperties);
+        snowflake.init();
+        try {
+            benchmark("SnowflakeIdGenerator", snowflake);
+        } finally {
+            snowflake.shutdown();
+        }
+    }
+
+    private void benchmark(String name, IdGenerator generator) throws InterruptedException {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(THREADS);
+        Runnable task = () -> {
+            for (int i = 0; i < IDS_PER_THREAD; i++) {
+                ids.add(generator.nextId("order"));
+            }
+            latch.countDown();
+        };
+        long begin = System.currentTimeMillis();
+        for (int i = 0; i < THREADS; i++) {
+            es.submit(task);
+        }
+        latch.await();
+        long cost = System.currentTimeMillis() - begin;
+        System.out.println(name + "，耗时：" + cost + "ms，吞吐量："
+                + THREADS * IDS_PER_THREAD * 1000L / Math.max(cost, 1) + "/s");
+        // id不重复
+        assertEquals(THREADS * IDS_PER_THREAD, ids.size());
+    }
+}
@@ -0,0 +1,92 @@
+package com.hmdp.util;
+
+import com.hmdp.utils.SeckillStock;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SHARDS_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 秒杀库存分片压测：相同的并发和请求数下，对比不同分片数的吞吐量，并校验没有超卖和重复下单
+ *
+ * @Project hm-dianping
+ * @Author Kiro
+ **/
+@SpringBootTest
+public class SeckillStockTest {
+
+    private static final int THREADS = 200;
+    private static final int REQUESTS_PER_THREAD = 100;
+    private static final int STOCK = 10000;
+
+    @Resource
+    private SeckillStock seckillStock;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ExecutorService es = Executors.newFixedThreadPool(THREADS);
+
+    @Test
+    void testShardThroughput() throws InterruptedException {
+        for (int shards : new int[]{1, 2, 4, 8}) {
+            // 使用不会与真实券冲突的id
+            Long voucherId = -1000L - shards;
+            seckillStock.init(voucherId, STOCK, shards);
+
+            AtomicInteger success = new AtomicInteger();
+            AtomicLong userIds = new AtomicLong();
+            // 压测产生的订单消息会被订单消费者处理，券在数据库中不存在，扣减库存失败，不会写入订单
+            AtomicLong orderIds = new AtomicLong(-voucherId * 1_000_000L);
+            CountDownLatch latch = new CountDownLatch(THREADS);
+            Runnable task = () -> {
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    if (seckillStock.tryAcquire(voucherId, userIds.incrementAndGet(), orderIds.incrementAndGet()) == 0) {
+                        success.incrementAndGet();
+                    }
+                }
+                latch.countDown();
+            };
+            long begin = System.currentTimeMillis();
+            for (int i = 0; i < THREADS; i++) {
+                es.submit(task);
+            }
+            latch.await();
+            long cost = System.currentTimeMillis() - begin;
+            System.out.println("分片数：" + shards + "，耗时：" + cost + "ms，吞吐量："
+                    + THREADS * REQUESTS_PER_THREAD * 1000L / Math.max(cost, 1) + "/s，成功：" + success.get());
+
+            // 库存守恒：成功数 + 剩余库存 = 初始库存
+            assertEquals(STOCK, success.get() + seckillStock.remaining(voucherId));
+            // 下单用户数与成功数一致
+            long orders = 0;
+            for (int i = 0; i < shards; i++) {
+                orders += stringRedisTemplate.opsForHash().size(SeckillStock.orderKey(voucherId, i, shards));
+            }
+            assertEquals(success.get(), orders);
+            cleanUp(voucherId, shards);
+        }
+    }
+
+    private void cleanUp(Long voucherId, int shards) {
+        List<String> keys = new ArrayList<>();
+        keys.add(SECKILL_SHARDS_KEY + voucherId);
+        for (int i = 0; i < shards; i++) {
+            keys.add(SeckillStock.stockKey(voucherId, i, shards));
+            keys.add(SeckillStock.orderKey(voucherId, i, shards));
+            keys.add(SeckillStock.pendingKey(voucherId, i, shards));
+        }
+        stringRedisTemplate.delete(keys);
+    }
+}
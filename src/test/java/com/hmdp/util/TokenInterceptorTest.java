@@ -0,0 +1,97 @@
+package com.hmdp.util;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SessionCache;
+import com.hmdp.utils.SignedToken;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 登录拦截器压测：对比Redis会话和签名token两种模式下每个请求的平均耗时
+ *
+ * @Project hm-dianping
+ * @Author Kiro
+ **/
+@SpringBootTest(properties = "hmdp.session.secret=token-interceptor-test-secret-0123456789")
+public class TokenInterceptorTest {
+
+    private static final int WARM_UP = 10000;
+    private static final int REQUESTS = 100000;
+
+    @Resource
+    private SessionCache sessionCache;
+
+    @Resource
+    private SignedToken signedToken;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Test
+    void testCostPerRequest() throws Exception {
+        RefreshTokenInterceptor interceptor = new RefreshTokenInterceptor(sessionCache, signedToken);
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("user_test");
+        user.setIcon("/imgs/icons/test.jpg");
+
+        // Redis会话
+        String token = UUID.randomUUID().toString(true);
+        Map<String, String> userMap = new HashMap<>();
+        userMap.put("id", user.getId().toString());
+        userMap.put("nickName", user.getNickName());
+        userMap.put("icon", user.getIcon());
+        stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY + token, userMap);
+        stringRedisTemplate.expire(LOGIN_USER_KEY + token, LOGIN_USER_TTL, TimeUnit.MINUTES);
+        try {
+            benchmark("Redis会话", interceptor, token);
+        } finally {
+            stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        }
+
+        // 签名token
+        String signed = signedToken.issue(user);
+        benchmark("签名token", interceptor, signed);
+        // 登出后校验失败
+        signedToken.revoke(signed);
+        assertNull(signedToken.verify(signed));
+    }
+
+    private void benchmark(String name, RefreshTokenInterceptor interceptor, String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("authorization", token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        for (int i = 0; i < WARM_UP; i++) {
+            handle(interceptor, request, response);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            handle(interceptor, request, response);
+        }
+        long cost = System.nanoTime() - begin;
+        System.out.println(name + "，平均每个请求耗时：" + cost / REQUESTS + "ns");
+    }
+
+    private void handle(RefreshTokenInterceptor interceptor, MockHttpServletRequest request,
+                        MockHttpServletResponse response) throws Exception {
+        interceptor.preHandle(request, response, null);
+        assertEquals(1L, UserHolder.getUser().getId());
+        interceptor.afterCompletion(request, response, null, null);
+    }
+}